@@ -19,7 +19,12 @@
  */
 package org.sonar.updatecenter.common;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.SortedSet;
@@ -223,6 +228,30 @@ public abstract class Artifact implements Comparable<Artifact> {
     return result;
   }
 
+  /**
+   * Same as {@link #getLastCompatible(Version)} for several SonarQube versions, but releases are iterated only once.
+   * SonarQube versions that are not supported by any release are not in the returned map.
+   *
+   * @since 1.21
+   */
+  public final Map<Version, Release> getLastCompatibleBySonarVersion(Collection<Version> sonarVersions) {
+    // versions are compatible when they are equal without qualifier
+    Map<Version, List<Version>> requestedVersions = new HashMap<>();
+    for (Version sonarVersion : sonarVersions) {
+      requestedVersions.computeIfAbsent(sonarVersion.removeQualifier(), v -> new ArrayList<>()).add(sonarVersion);
+    }
+    Map<Version, Release> result = new HashMap<>();
+    for (Release r : getAllReleases()) {
+      for (Version supportedVersion : r.getRequiredSonarVersions()) {
+        for (Version sonarVersion : requestedVersions.getOrDefault(supportedVersion.removeQualifier(), Collections.emptyList())) {
+          // releases are sorted, so the last compatible one wins
+          result.put(sonarVersion, r);
+        }
+      }
+    }
+    return result;
+  }
+
   /**
    * Lowest plugin version (including dev) that is compatible with provided SQ version
    */
@@ -0,0 +1,109 @@
+/*
+ * SonarSource :: Update Center :: Common
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.sonar.updatecenter.common.exception.DependencyCycleException;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Releases to install, sorted so that the dependencies of a release are installed before it.
+ * Releases are grouped in waves: the releases of a wave only depend on releases of the previous waves,
+ * so that they can be downloaded and installed concurrently.
+ */
+public final class InstallPlan {
+
+  private static final Comparator<Release> RELEASE_ORDER = Comparator.comparing(Release::getKey).thenComparing(Release::getVersion);
+
+  private final List<List<Release>> waves;
+
+  private InstallPlan(List<List<Release>> waves) {
+    this.waves = unmodifiableList(waves);
+  }
+
+  /**
+   * Sorts the releases with Kahn's algorithm. Within a wave, releases are sorted by plugin key.
+   *
+   * @throws DependencyCycleException if releases depend on each other
+   */
+  public static InstallPlan create(Collection<Release> releases) {
+    ReleaseGraph graph = new ReleaseGraph(releases);
+    Map<Release, Integer> requiredCounts = new HashMap<>();
+    List<Release> wave = new ArrayList<>();
+    for (Release release : graph.getReleases()) {
+      int requiredCount = graph.getRequiredCount(release);
+      requiredCounts.put(release, requiredCount);
+      if (requiredCount == 0) {
+        wave.add(release);
+      }
+    }
+
+    List<List<Release>> waves = new ArrayList<>();
+    int sortedCount = 0;
+    while (!wave.isEmpty()) {
+      wave.sort(RELEASE_ORDER);
+      waves.add(unmodifiableList(wave));
+      sortedCount += wave.size();
+      List<Release> nextWave = new ArrayList<>();
+      for (Release release : wave) {
+        for (Release dependent : graph.getDependents(release)) {
+          if (requiredCounts.merge(dependent, -1, Integer::sum) == 0) {
+            nextWave.add(dependent);
+          }
+        }
+      }
+      wave = nextWave;
+    }
+
+    if (sortedCount < graph.getReleases().size()) {
+      String releaseKeys = graph.getReleases().stream()
+        .filter(release -> requiredCounts.get(release) > 0)
+        .map(Release::getKey)
+        .collect(Collectors.joining("', '"));
+      throw new DependencyCycleException("There is a dependency cycle between plugins '" + releaseKeys + "' that must be cut.");
+    }
+    return new InstallPlan(waves);
+  }
+
+  /**
+   * @return all the releases, dependencies first
+   */
+  public List<Release> getReleases() {
+    return waves.stream()
+      .flatMap(List::stream)
+      .collect(Collectors.toList());
+  }
+
+  public List<List<Release>> getWaves() {
+    return waves;
+  }
+
+  public boolean isEmpty() {
+    return waves.isEmpty();
+  }
+
+}
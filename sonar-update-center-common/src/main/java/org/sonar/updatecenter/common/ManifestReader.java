@@ -0,0 +1,209 @@
+/*
+ * SonarSource :: Update Center :: Common
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import javax.annotation.CheckForNull;
+
+/**
+ * Reads the manifest of a JAR file without indexing all its entries, as {@link JarFile} does. The end of the file is
+ * read to locate the central directory, which is scanned for the manifest entry, then only this entry is read and
+ * inflated. Small regions are read into heap buffers rather than memory-mapped, as mapping costs more than it
+ * saves at these sizes and the mappings are only released by the garbage collector.
+ * <p/>
+ * Archives that are not handled (ZIP64, encryption, unknown compression method or any inconsistency) are read
+ * with {@link JarFile}.
+ *
+ * @since 1.21
+ */
+public final class ManifestReader {
+
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int MAX_COMMENT_SIZE = 0xFFFF;
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+  private static final byte[] MANIFEST_NAME = JarFile.MANIFEST_NAME.getBytes(StandardCharsets.UTF_8);
+
+  private ManifestReader() {
+    // only static methods
+  }
+
+  /**
+   * @return the manifest, or null if the file does not contain any
+   */
+  @CheckForNull
+  public static Manifest read(File file) throws IOException {
+    byte[] bytes;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      bytes = readManifestEntry(channel);
+    } catch (UnsupportedArchiveException | IndexOutOfBoundsException | IllegalArgumentException | DataFormatException e) {
+      return readWithJarFile(file);
+    }
+    return bytes != null ? new Manifest(new ByteArrayInputStream(bytes)) : null;
+  }
+
+  @CheckForNull
+  private static Manifest readWithJarFile(File file) throws IOException {
+    try (JarFile jar = new JarFile(file)) {
+      return jar.getManifest();
+    }
+  }
+
+  @CheckForNull
+  private static byte[] readManifestEntry(FileChannel channel) throws IOException, DataFormatException {
+    long size = channel.size();
+    if (size < END_OF_CENTRAL_DIRECTORY_SIZE) {
+      throw new UnsupportedArchiveException();
+    }
+    long tailSize = Math.min(size, (long) END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+    ByteBuffer tail = read(channel, size - tailSize, (int) tailSize);
+    int eocd = findEndOfCentralDirectory(tail);
+
+    int entries = unsignedShort(tail, eocd + 10);
+    long directorySize = unsignedInt(tail, eocd + 12);
+    long directoryOffset = unsignedInt(tail, eocd + 16);
+    if (entries == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL || directoryOffset + directorySize > size
+      || directorySize > Integer.MAX_VALUE) {
+      // ZIP64, inconsistent or too large
+      throw new UnsupportedArchiveException();
+    }
+
+    ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+    int position = 0;
+    for (int i = 0; i < entries; i++) {
+      if (directory.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+        throw new UnsupportedArchiveException();
+      }
+      int nameLength = unsignedShort(directory, position + 28);
+      int headerLength = CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + unsignedShort(directory, position + 30) + unsignedShort(directory, position + 32);
+      if (isManifest(directory, position + CENTRAL_DIRECTORY_HEADER_SIZE, nameLength)) {
+        return readEntry(channel, directory, position);
+      }
+      position += headerLength;
+    }
+    return null;
+  }
+
+  private static int findEndOfCentralDirectory(ByteBuffer tail) {
+    for (int position = tail.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; position >= 0; position--) {
+      if (tail.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        return position;
+      }
+    }
+    throw new UnsupportedArchiveException();
+  }
+
+  private static boolean isManifest(ByteBuffer directory, int namePosition, int nameLength) {
+    if (nameLength != MANIFEST_NAME.length) {
+      return false;
+    }
+    for (int i = 0; i < nameLength; i++) {
+      if (Character.toUpperCase((char) directory.get(namePosition + i)) != MANIFEST_NAME[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] readEntry(FileChannel channel, ByteBuffer directory, int headerPosition) throws IOException, DataFormatException {
+    int flags = unsignedShort(directory, headerPosition + 8);
+    int method = unsignedShort(directory, headerPosition + 10);
+    long compressedSize = unsignedInt(directory, headerPosition + 20);
+    long size = unsignedInt(directory, headerPosition + 24);
+    long localHeaderOffset = unsignedInt(directory, headerPosition + 42);
+    if ((flags & 1) != 0 || compressedSize > Integer.MAX_VALUE || size > Integer.MAX_VALUE) {
+      // encrypted or too large
+      throw new UnsupportedArchiveException();
+    }
+
+    ByteBuffer localHeader = read(channel, localHeaderOffset, LOCAL_HEADER_SIZE);
+    if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+      throw new UnsupportedArchiveException();
+    }
+    long dataOffset = localHeaderOffset + LOCAL_HEADER_SIZE + unsignedShort(localHeader, 26) + unsignedShort(localHeader, 28);
+    byte[] data = read(channel, dataOffset, (int) compressedSize).array();
+
+    if (method == STORED) {
+      return data;
+    }
+    if (method != DEFLATED) {
+      throw new UnsupportedArchiveException();
+    }
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(data);
+      byte[] result = new byte[(int) size];
+      int inflated = 0;
+      while (inflated < result.length && !inflater.finished()) {
+        int count = inflater.inflate(result, inflated, result.length - inflated);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new UnsupportedArchiveException();
+        }
+        inflated += count;
+      }
+      if (inflated != result.length) {
+        throw new UnsupportedArchiveException();
+      }
+      return result;
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new UnsupportedArchiveException();
+      }
+    }
+    return buffer;
+  }
+
+  private static int unsignedShort(ByteBuffer buffer, int position) {
+    return buffer.getShort(position) & 0xFFFF;
+  }
+
+  private static long unsignedInt(ByteBuffer buffer, int position) {
+    return buffer.getInt(position) & 0xFFFFFFFFL;
+  }
+
+  /**
+   * The archive must be read with {@link JarFile}
+   */
+  private static class UnsupportedArchiveException extends RuntimeException {
+  }
+}
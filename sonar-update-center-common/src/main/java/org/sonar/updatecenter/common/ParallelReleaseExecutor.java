@@ -0,0 +1,190 @@
+/*
+ * SonarSource :: Update Center :: Common
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Executes an action (download, verification, installation...) on a set of releases, concurrently but
+ * never before the action has been successfully executed on the releases it depends on. See {@link ReleaseGraph}
+ * for the definition of dependencies.
+ * <p/>
+ * A release is submitted to the bounded pool as soon as all its dependencies are completed, so that
+ * the slowest release of a "wave" does not delay the unrelated releases of the next one.
+ * If the action fails on a release, no more releases are submitted, running ones are awaited
+ * and an {@link IllegalStateException} is thrown. The same exception is thrown when some releases
+ * can never be submitted because they require each other.
+ */
+public class ParallelReleaseExecutor {
+
+  @FunctionalInterface
+  public interface Action {
+    void execute(Release release) throws Exception;
+  }
+
+  private final int parallelism;
+
+  public ParallelReleaseExecutor(int parallelism) {
+    this.parallelism = DaemonThreadFactory.checkParallelism(parallelism);
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Executes the action on all the releases, including dev releases, of all the plugins of the referential
+   */
+  public void execute(PluginReferential pluginReferential, Action action) {
+    List<Release> releases = new ArrayList<>();
+    for (Plugin plugin : pluginReferential.getPlugins()) {
+      releases.addAll(plugin.getAllReleases());
+    }
+    execute(releases, action);
+  }
+
+  public void execute(Collection<Release> releases, Action action) {
+    ReleaseGraph graph = new ReleaseGraph(releases);
+    if (graph.getReleases().isEmpty()) {
+      return;
+    }
+    ExecutorService executorService = Executors.newFixedThreadPool(Math.min(parallelism, graph.getReleases().size()), new DaemonThreadFactory("release-executor"));
+    try {
+      new Scheduler(graph, action, new ExecutorCompletionService<>(executorService)).run();
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private static class Scheduler {
+    private final ReleaseGraph graph;
+    private final Action action;
+    private final CompletionService<Release> completionService;
+    private final Map<Release, Integer> requiredCounts = new HashMap<>();
+    private final Set<Release> completedReleases = new HashSet<>();
+    private int runningCount = 0;
+    private String failedRelease = null;
+    private Throwable failure = null;
+
+    Scheduler(ReleaseGraph graph, Action action, CompletionService<Release> completionService) {
+      this.graph = graph;
+      this.action = action;
+      this.completionService = completionService;
+    }
+
+    void run() {
+      for (Release release : graph.getReleases()) {
+        int requiredCount = graph.getRequiredCount(release);
+        requiredCounts.put(release, requiredCount);
+        if (requiredCount == 0) {
+          submit(release);
+        }
+      }
+      while (runningCount > 0) {
+        onCompletion(awaitNext());
+      }
+      if (failure != null) {
+        throw new IllegalStateException(failedRelease != null ? ("Fail to process release " + failedRelease) : "Fail to process releases", failure);
+      }
+      if (completedReleases.size() < graph.getReleases().size()) {
+        String unexecutedReleases = graph.getReleases().stream()
+          .filter(release -> !completedReleases.contains(release))
+          .map(release -> release.getKey() + " " + release.getVersion())
+          .collect(Collectors.joining(", "));
+        throw new IllegalStateException("Fail to process releases with cyclic dependencies: " + unexecutedReleases);
+      }
+    }
+
+    private void submit(Release release) {
+      runningCount++;
+      completionService.submit(() -> {
+        try {
+          action.execute(release);
+          return release;
+        } catch (Exception e) {
+          throw new ReleaseFailure(release, e);
+        }
+      });
+    }
+
+    private ExecutionResult awaitNext() {
+      try {
+        return new ExecutionResult(completionService.take().get(), null);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while processing releases", e);
+      } catch (ExecutionException e) {
+        return new ExecutionResult(null, e.getCause());
+      } finally {
+        runningCount--;
+      }
+    }
+
+    private void onCompletion(ExecutionResult result) {
+      if (result.failure != null) {
+        if (failure == null && result.failure instanceof ReleaseFailure) {
+          failedRelease = ((ReleaseFailure) result.failure).releaseName;
+          failure = result.failure.getCause();
+        } else if (failure == null) {
+          failure = result.failure;
+        }
+      } else if (failure == null) {
+        completedReleases.add(result.release);
+        for (Release dependent : graph.getDependents(result.release)) {
+          if (requiredCounts.merge(dependent, -1, Integer::sum) == 0) {
+            submit(dependent);
+          }
+        }
+      }
+    }
+  }
+
+  private static class ExecutionResult {
+    private final Release release;
+    private final Throwable failure;
+
+    ExecutionResult(Release release, Throwable failure) {
+      this.release = release;
+      this.failure = failure;
+    }
+  }
+
+  private static class ReleaseFailure extends RuntimeException {
+    private final String releaseName;
+
+    ReleaseFailure(Release release, Exception cause) {
+      super(cause);
+      this.releaseName = release.getKey() + " " + release.getVersion();
+    }
+  }
+
+}
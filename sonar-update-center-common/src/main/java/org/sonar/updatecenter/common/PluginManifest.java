@@ -23,7 +23,6 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Date;
 import java.util.jar.Attributes;
-import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.ReflectionToStringBuilder;
@@ -115,18 +114,13 @@ public final class PluginManifest {
    */
   public PluginManifest(File file) throws IOException {
     this();
-    JarFile jar = null;
     try {
-      jar = new JarFile(file);
-      if (jar.getManifest() != null) {
-        loadManifest(jar.getManifest());
+      Manifest manifest = ManifestReader.read(file);
+      if (manifest != null) {
+        loadManifest(manifest);
       }
     } catch (Exception e) {
       throw new IllegalStateException("Unable to read plugin manifest from jar : " + file.getAbsolutePath(), e);
-    } finally {
-      if (jar != null) {
-        jar.close();
-      }
     }
   }
 
@@ -0,0 +1,163 @@
+/*
+ * SonarSource :: Update Center :: Common
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads concurrently the manifests of plugin files, for example the plugins installed in a SonarQube server,
+ * and converts them to a {@link PluginReferential}. Files that can't be read, that are not plugins or whose manifest
+ * can't be converted, for example because of a missing dependency, are reported as errors, without preventing
+ * the other files from being loaded.
+ *
+ * @since 1.21
+ */
+public class PluginManifestScanner {
+
+  private final int parallelism;
+
+  public PluginManifestScanner(int parallelism) {
+    this.parallelism = DaemonThreadFactory.checkParallelism(parallelism);
+  }
+
+  /**
+   * Scans the files with extension .jar of the directory and of its sub-directories
+   */
+  public Result scan(File dir) throws IOException {
+    List<File> files;
+    try (Stream<Path> paths = Files.walk(dir.toPath())) {
+      files = paths
+        .filter(path -> path.getFileName().toString().endsWith(".jar"))
+        .filter(Files::isRegularFile)
+        .map(Path::toFile)
+        .sorted()
+        .collect(Collectors.toList());
+    }
+    return scan(files);
+  }
+
+  /**
+   * Manifests are converted in the order of files, as soon as they are read. Dependencies are resolved once all
+   * the plugins are known. When several files provide the same plugin key, the first one is loaded and the
+   * others are reported as errors.
+   */
+  public Result scan(Collection<File> files) {
+    if (files.isEmpty()) {
+      return new Result(PluginReferential.createEmpty(), Collections.emptyMap());
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, files.size()), new DaemonThreadFactory("manifest-scanner"));
+    try {
+      Map<File, Future<PluginManifest>> futures = new LinkedHashMap<>();
+      for (File file : files) {
+        futures.put(file, executor.submit(() -> new PluginManifest(file)));
+      }
+
+      Map<File, PluginManifest> manifests = new LinkedHashMap<>();
+      List<Plugin> plugins = new ArrayList<>();
+      Map<String, File> filesByKey = new HashMap<>();
+      Map<File, Exception> errorsByFile = new HashMap<>();
+      for (Map.Entry<File, Future<PluginManifest>> future : futures.entrySet()) {
+        File file = future.getKey();
+        try {
+          PluginManifest manifest = future.getValue().get();
+          if (!manifest.isValid()) {
+            throw new IllegalStateException("File is not a plugin: " + file.getAbsolutePath());
+          }
+          Plugin plugin = PluginReferentialManifestConverter.toPlugin(manifest);
+          File firstFile = filesByKey.putIfAbsent(plugin.getKey(), file);
+          if (firstFile != null) {
+            throw new IllegalStateException(String.format("Plugin '%s' of file %s is already provided by file %s",
+              plugin.getKey(), file.getAbsolutePath(), firstFile.getAbsolutePath()));
+          }
+          plugins.add(plugin);
+          manifests.put(file, manifest);
+        } catch (ExecutionException e) {
+          errorsByFile.put(file, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        } catch (RuntimeException e) {
+          errorsByFile.put(file, e);
+        }
+      }
+
+      PluginReferential pluginReferential = PluginReferential.create(plugins);
+      manifests.forEach((file, manifest) -> {
+        try {
+          PluginReferentialManifestConverter.addDependencies(pluginReferential, manifest);
+        } catch (RuntimeException e) {
+          errorsByFile.put(file, e);
+        }
+      });
+
+      Map<File, Exception> errors = new LinkedHashMap<>();
+      for (File file : files) {
+        if (errorsByFile.containsKey(file)) {
+          errors.put(file, errorsByFile.get(file));
+        }
+      }
+      return new Result(pluginReferential, errors);
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while scanning plugin files", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public static final class Result {
+    private final PluginReferential pluginReferential;
+    private final Map<File, Exception> errors;
+
+    private Result(PluginReferential pluginReferential, Map<File, Exception> errors) {
+      this.pluginReferential = pluginReferential;
+      this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * Plugins of the files that have been successfully read
+     */
+    public PluginReferential getPluginReferential() {
+      return pluginReferential;
+    }
+
+    /**
+     * Errors by file, in the order of files
+     */
+    public Map<File, Exception> getErrors() {
+      return errors;
+    }
+  }
+
+}
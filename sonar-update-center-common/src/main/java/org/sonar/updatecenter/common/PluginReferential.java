@@ -19,8 +19,14 @@
  */
 package org.sonar.updatecenter.common;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
@@ -32,9 +38,11 @@ import org.sonar.updatecenter.common.exception.PluginNotFoundException;
 public class PluginReferential {
 
   private Set<Plugin> plugins;
+  private Map<String, Plugin> pluginsByKey;
 
   private PluginReferential() {
     this.plugins = new TreeSet<>();
+    this.pluginsByKey = new HashMap<>();
   }
 
   public static PluginReferential create(List<Plugin> pluginList) {
@@ -66,39 +74,47 @@ public class PluginReferential {
    * @throws NoSuchElementException if plugin could not be found
    */
   public Plugin findPlugin(String key) {
-    return plugins.stream()
-      .filter(plugin -> plugin.getKey().equals(key))
-      .findFirst()
-      .orElseThrow(() -> new NoSuchElementException("Unable to find plugin with key " + key));
+    Plugin plugin = pluginsByKey.get(key);
+    if (plugin == null) {
+      throw new NoSuchElementException("Unable to find plugin with key " + key);
+    }
+    return plugin;
   }
 
   public boolean doesContainPlugin(String key) {
-    return plugins.stream()
-      .anyMatch(plugin -> plugin.getKey().equals(key));
+    return pluginsByKey.containsKey(key);
   }
 
   public boolean doesContainRelease(final String key, Version version) {
-    for (Plugin plugin : plugins) {
-      if (plugin.getKey().equals(key) && plugin.doesContainVersion(version)) {
-        return true;
-      }
-    }
-    return false;
+    Plugin plugin = pluginsByKey.get(key);
+    return plugin != null && plugin.doesContainVersion(version);
   }
 
+  /**
+   * Breadth-first walk of the reverse dependencies of the last release of the plugin.
+   *
+   * @return the key of the plugin followed by the keys of the plugins whose last release depends, directly or not,
+   * on it. Each key is returned only once.
+   * @throws NoSuchElementException if plugin could not be found
+   */
   public List<String> findLastReleasesWithDependencies(String pluginKey) {
-    List<String> removablePlugins = new ArrayList<>();
     Plugin plugin = findPlugin(pluginKey);
-    if (plugin != null) {
-      Release pluginRelease = plugin.getLastRelease();
-      if (pluginRelease != null) {
-        removablePlugins.add(plugin.getKey());
-        for (Release incomingDependencies : pluginRelease.getIncomingDependencies()) {
-          removablePlugins.addAll(findLastReleasesWithDependencies(incomingDependencies.getArtifact().getKey()));
+    if (plugin.getLastRelease() == null) {
+      return new ArrayList<>();
+    }
+    Set<String> removablePlugins = new LinkedHashSet<>();
+    Deque<Release> queue = new ArrayDeque<>();
+    removablePlugins.add(plugin.getKey());
+    queue.add(plugin.getLastRelease());
+    while (!queue.isEmpty()) {
+      queue.poll().forEachIncoming(incomingDependency -> {
+        Plugin dependent = pluginsByKey.get(incomingDependency.getKey());
+        if (dependent != null && dependent.getLastRelease() != null && removablePlugins.add(dependent.getKey())) {
+          queue.add(dependent.getLastRelease());
         }
-      }
+      });
     }
-    return removablePlugins;
+    return new ArrayList<>(removablePlugins);
   }
 
   public void addOutgoingDependency(Release release, String requiredPluginReleaseKey, String requiredMinimumReleaseVersion) {
@@ -124,7 +140,7 @@ public class PluginReferential {
   private void checkDependencyCycle(Release release) {
     List<Release> releases = new ArrayList<>();
     try {
-      checkDependencyCycle(release, releases);
+      checkDependencyCycle(release, releases, new HashSet<>());
     } catch (DependencyCycleException e) {
       String releaseKeys = releases.stream()
         .map(rel -> rel.getArtifact().getKey())
@@ -133,14 +149,22 @@ public class PluginReferential {
     }
   }
 
-  private static void checkDependencyCycle(Release release, List<Release> releases) {
-    for (Release outgoingDependency : release.getOutgoingDependencies()) {
+  /**
+   * Depth-first walk of the outgoing dependencies. {@code releases} is the current path, so that two releases
+   * depending on a same third one are not considered as a cycle.
+   */
+  private static void checkDependencyCycle(Release release, List<Release> releases, Set<Release> checkedReleases) {
+    release.forEachOutgoing(outgoingDependency -> {
       if (releases.contains(outgoingDependency)) {
         throw new DependencyCycleException();
       }
-      releases.add(outgoingDependency);
-      checkDependencyCycle(outgoingDependency, releases);
-    }
+      if (!checkedReleases.contains(outgoingDependency)) {
+        releases.add(outgoingDependency);
+        checkDependencyCycle(outgoingDependency, releases, checkedReleases);
+        releases.remove(releases.size() - 1);
+        checkedReleases.add(outgoingDependency);
+      }
+    });
   }
 
   List<Release> getLastMasterReleases() {
@@ -152,7 +176,9 @@ public class PluginReferential {
   }
 
   private PluginReferential add(Plugin plugin) {
-    this.plugins.add(plugin);
+    if (this.plugins.add(plugin)) {
+      this.pluginsByKey.put(plugin.getKey(), plugin);
+    }
     return this;
   }
 
@@ -32,32 +32,46 @@ public class PluginReferentialManifestConverter {
   public static PluginReferential fromPluginManifests(List<PluginManifest> pluginManifestList) {
     List<Plugin> plugins = new ArrayList<>();
     for (PluginManifest pluginManifest : pluginManifestList) {
-      Plugin plugin = Plugin.factory(pluginManifest.getKey());
-      plugin.merge(pluginManifest);
-
-      Release release = new Release(plugin, pluginManifest.getVersion());
-      release.addRequiredSonarVersions(Version.create(pluginManifest.getSonarVersion()));
-      release.setDisplayVersion(pluginManifest.getDisplayVersion());
-      plugin.addRelease(release);
-      plugins.add(plugin);
+      plugins.add(toPlugin(pluginManifest));
     }
 
     PluginReferential pluginReferential = PluginReferential.create(plugins);
 
     for (PluginManifest pluginManifest : pluginManifestList) {
-      Plugin plugin = pluginReferential.findPlugin(pluginManifest.getKey());
-      for (String requiresPluginKey : pluginManifest.getRequirePlugins()) {
-        if (StringUtils.isNotBlank(requiresPluginKey)) {
-          plugin.getReleases().forEach(release -> {
-            String[] split = requiresPluginKey.split(":");
-            String requiredPluginReleaseKey = split[0];
-            String requiredMinimumReleaseVersion = split[1];
-            pluginReferential.addOutgoingDependency(release, requiredPluginReleaseKey, requiredMinimumReleaseVersion);
-          });
-        }
-      }
+      addDependencies(pluginReferential, pluginManifest);
     }
     return pluginReferential;
   }
 
+  /**
+   * @return the plugin declared by the manifest, with a single release and without dependencies
+   */
+  static Plugin toPlugin(PluginManifest pluginManifest) {
+    Plugin plugin = Plugin.factory(pluginManifest.getKey());
+    plugin.merge(pluginManifest);
+
+    Release release = new Release(plugin, pluginManifest.getVersion());
+    release.addRequiredSonarVersions(Version.create(pluginManifest.getSonarVersion()));
+    release.setDisplayVersion(pluginManifest.getDisplayVersion());
+    plugin.addRelease(release);
+    return plugin;
+  }
+
+  /**
+   * Adds the dependencies declared by the manifest to the releases of its plugin, which must belong to the referential
+   */
+  static void addDependencies(PluginReferential pluginReferential, PluginManifest pluginManifest) {
+    Plugin plugin = pluginReferential.findPlugin(pluginManifest.getKey());
+    for (String requiresPluginKey : pluginManifest.getRequirePlugins()) {
+      if (StringUtils.isNotBlank(requiresPluginKey)) {
+        plugin.getReleases().forEach(release -> {
+          String[] split = requiresPluginKey.split(":");
+          String requiredPluginReleaseKey = split[0];
+          String requiredMinimumReleaseVersion = split[1];
+          pluginReferential.addOutgoingDependency(release, requiredPluginReleaseKey, requiredMinimumReleaseVersion);
+        });
+      }
+    }
+  }
+
 }
@@ -31,6 +31,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
@@ -52,8 +53,10 @@ public class Release implements Comparable<Release> {
   private String groupId;
   private String artifactId;
 
-  private Set<Release> outgoingDependencies;
-  private Set<Release> incomingDependencies;
+  private final Set<Release> outgoingDependencies;
+  private final Set<Release> incomingDependencies;
+  private final Set<Release> outgoingDependenciesView;
+  private final Set<Release> incomingDependenciesView;
   /**
    * from oldest to newest sonar versions
    */
@@ -69,6 +72,8 @@ public class Release implements Comparable<Release> {
     this.compatibleSqVersions = new TreeSet<>();
     this.outgoingDependencies = new HashSet<>();
     this.incomingDependencies = new HashSet<>();
+    this.outgoingDependenciesView = unmodifiableSet(outgoingDependencies);
+    this.incomingDependenciesView = unmodifiableSet(incomingDependencies);
   }
 
   public Release(Artifact artifact, String version) {
@@ -212,8 +217,18 @@ public class Release implements Comparable<Release> {
     return this;
   }
 
+  /**
+   * @return read-only view of the releases required by this release. It reflects the dependencies added later on.
+   */
   public Set<Release> getOutgoingDependencies() {
-    return unmodifiableSet(new HashSet<>(outgoingDependencies));
+    return outgoingDependenciesView;
+  }
+
+  /**
+   * Visits the releases required by this release, without copying them
+   */
+  public void forEachOutgoing(Consumer<Release> consumer) {
+    outgoingDependencies.forEach(consumer);
   }
 
   public Release addOutgoingDependency(Release required) {
@@ -221,8 +236,18 @@ public class Release implements Comparable<Release> {
     return this;
   }
 
+  /**
+   * @return read-only view of the releases requiring this release. It reflects the dependencies added later on.
+   */
   public Set<Release> getIncomingDependencies() {
-    return unmodifiableSet(new HashSet<>(incomingDependencies));
+    return incomingDependenciesView;
+  }
+
+  /**
+   * Visits the releases requiring this release, without copying them
+   */
+  public void forEachIncoming(Consumer<Release> consumer) {
+    incomingDependencies.forEach(consumer);
   }
 
   public Release addIncomingDependency(Release required) {
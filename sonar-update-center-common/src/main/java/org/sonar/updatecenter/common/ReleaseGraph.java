@@ -0,0 +1,87 @@
+/*
+ * SonarSource :: Update Center :: Common
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dependencies between the releases of a set, as declared by {@link Release#getOutgoingDependencies()}.
+ * A release requires another release of the set when it depends on it, or on another release of the same
+ * plugin as the dependency only defines the minimal version to install.
+ */
+class ReleaseGraph {
+
+  private final List<Release> releases;
+  private final Map<Release, Set<Release>> dependentsByRelease = new HashMap<>();
+  private final Map<Release, Integer> requiredCountByRelease = new HashMap<>();
+
+  ReleaseGraph(Collection<Release> releases) {
+    this.releases = new ArrayList<>(new LinkedHashSet<>(releases));
+    Map<String, List<Release>> releasesByKey = new HashMap<>();
+    for (Release release : this.releases) {
+      releasesByKey.computeIfAbsent(release.getKey(), k -> new ArrayList<>()).add(release);
+      requiredCountByRelease.put(release, 0);
+    }
+    for (Release release : this.releases) {
+      Set<Release> requiredReleases = new LinkedHashSet<>();
+      release.forEachOutgoing(dependency -> {
+        if (requiredCountByRelease.containsKey(dependency)) {
+          requiredReleases.add(dependency);
+        } else {
+          requiredReleases.addAll(releasesByKey.getOrDefault(dependency.getKey(), Collections.emptyList()));
+        }
+      });
+      requiredReleases.remove(release);
+      for (Release requiredRelease : requiredReleases) {
+        dependentsByRelease.computeIfAbsent(requiredRelease, r -> new LinkedHashSet<>()).add(release);
+      }
+      requiredCountByRelease.put(release, requiredReleases.size());
+    }
+  }
+
+  /**
+   * Releases of the graph, without duplicates, in the order they were provided
+   */
+  List<Release> getReleases() {
+    return releases;
+  }
+
+  /**
+   * Releases of the graph which require the given release
+   */
+  Set<Release> getDependents(Release release) {
+    return dependentsByRelease.getOrDefault(release, Collections.emptySet());
+  }
+
+  /**
+   * Number of releases of the graph required by the given release
+   */
+  int getRequiredCount(Release release) {
+    return requiredCountByRelease.getOrDefault(release, 0);
+  }
+
+}
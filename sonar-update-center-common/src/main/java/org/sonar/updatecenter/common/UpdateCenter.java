@@ -155,6 +155,13 @@ public class UpdateCenter {
     return new ArrayList<>(installablePlugins);
   }
 
+  /**
+   * Same as {@link #findInstallablePlugins(String, Version)}, but releases are sorted so that dependencies are installed first
+   */
+  public InstallPlan findInstallPlan(String pluginKey, Version minimumVersion) {
+    return InstallPlan.create(findInstallablePlugins(pluginKey, minimumVersion));
+  }
+
   private void addInstallablePlugins(String pluginKey, Version minimumVersion, Set<Release> installablePlugins, Set<Release> checkedPlugins) {
     try {
       if (!contain(pluginKey, installablePlugins) && !contain(pluginKey, checkedPlugins)) {
@@ -175,15 +182,14 @@ public class UpdateCenter {
   private void addInstallableRelease(Release pluginRelease, Set<Release> installablePlugins, Set<Release> checkedPlugins) {
     addReleaseIfNotAlreadyInstalled(pluginRelease, installablePlugins);
     checkedPlugins.add(pluginRelease);
-    for (Release outgoingDependency : pluginRelease.getOutgoingDependencies()) {
-      addInstallablePlugins(outgoingDependency.getArtifact().getKey(), outgoingDependency.getVersion(), installablePlugins, checkedPlugins);
-    }
-    for (Release incomingDependency : pluginRelease.getIncomingDependencies()) {
+    pluginRelease.forEachOutgoing(outgoingDependency -> addInstallablePlugins(outgoingDependency.getArtifact().getKey(), outgoingDependency.getVersion(),
+      installablePlugins, checkedPlugins));
+    pluginRelease.forEachIncoming(incomingDependency -> {
       String pluginKey = incomingDependency.getArtifact().getKey();
       if (isInstalled(pluginKey)) {
         addInstallablePlugins(pluginKey, incomingDependency.getVersion(), installablePlugins, checkedPlugins);
       }
-    }
+    });
   }
 
   private boolean contain(final String pluginKey, Set<Release> installablePlugins) {
@@ -160,9 +160,7 @@ public final class UpdateCenterSerializer {
 
   private static String[] getRequiredList(Release release) {
     List<String> requiredStringList = new ArrayList<>();
-    for (Release requiredRelease : release.getOutgoingDependencies()) {
-      requiredStringList.add(requiredRelease.getArtifact().getKey() + ":" + requiredRelease.getVersion().getName());
-    }
+    release.forEachOutgoing(requiredRelease -> requiredStringList.add(requiredRelease.getArtifact().getKey() + ":" + requiredRelease.getVersion().getName()));
     return requiredStringList.toArray(new String[] {});
   }
 }
@@ -25,6 +25,10 @@ public class DependencyCycleException extends RuntimeException {
     super();
   }
 
+  public DependencyCycleException(String s) {
+    super(s);
+  }
+
   public DependencyCycleException(String s, Throwable throwable) {
     super(s, throwable);
   }
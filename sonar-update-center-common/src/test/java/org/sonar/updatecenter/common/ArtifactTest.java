@@ -22,6 +22,7 @@ package org.sonar.updatecenter.common;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.junit.Test;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -74,6 +75,23 @@ public class ArtifactTest {
       .containsExactly("1.5", "2.0");
   }
 
+  @Test
+  public void getLastCompatibleBySonarVersion_returns_same_releases_as_getLastCompatible() {
+    Plugin plugin = Plugin.factory("fake");
+    plugin.addRelease(new Release(plugin, "1.0").addRequiredSonarVersions("6.7", "7.0"));
+    plugin.addRelease(new Release(plugin, "1.1").addRequiredSonarVersions("7.0", "7.1"));
+    plugin.setDevRelease(new Release(plugin, "2.0-SNAPSHOT").addRequiredSonarVersions("7.2"));
+    List<Version> sonarVersions = Arrays.asList(Version.create("6.7"), Version.create("7.0"), Version.create("7.1-RC1"), Version.create("7.2"), Version.create("7.3"));
+
+    Map<Version, Release> releases = plugin.getLastCompatibleBySonarVersion(sonarVersions);
+
+    for (Version sonarVersion : sonarVersions) {
+      assertThat(releases.get(sonarVersion)).isSameAs(plugin.getLastCompatible(sonarVersion));
+    }
+    assertThat(releases.get(Version.create("7.0")).getVersion().getName()).isEqualTo("1.1");
+    assertThat(releases).doesNotContainKey(Version.create("7.3"));
+  }
+
   @Test
   public void getMinimalRelease_returns_the_first_version_greater_than_specified_version() {
     FakeArtifact artifact = new FakeArtifact("fake");
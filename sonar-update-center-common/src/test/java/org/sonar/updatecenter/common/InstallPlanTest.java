@@ -0,0 +1,91 @@
+/*
+ * SonarSource :: Update Center :: Common
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.common;
+
+import java.util.Collections;
+import org.junit.Test;
+import org.sonar.updatecenter.common.exception.DependencyCycleException;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class InstallPlanTest {
+
+  @Test
+  public void sort_releases_by_waves_of_independent_releases() {
+    Release java = new Release(Plugin.factory("java"), "5.0");
+    Release web = new Release(Plugin.factory("web"), "2.0");
+    Release findbugs = new Release(Plugin.factory("findbugs"), "3.0").addOutgoingDependency(java);
+    Release pmd = new Release(Plugin.factory("pmd"), "2.0").addOutgoingDependency(java);
+    Release checks = new Release(Plugin.factory("checks"), "1.0").addOutgoingDependency(findbugs).addOutgoingDependency(pmd).addOutgoingDependency(web);
+
+    InstallPlan plan = InstallPlan.create(asList(checks, pmd, findbugs, web, java));
+
+    assertThat(plan.isEmpty()).isFalse();
+    assertThat(plan.getWaves()).containsExactly(asList(java, web), asList(findbugs, pmd), asList(checks));
+    assertThat(plan.getReleases()).containsExactly(java, web, findbugs, pmd, checks);
+  }
+
+  @Test
+  public void ignore_dependencies_outside_of_the_plan() {
+    Release java = new Release(Plugin.factory("java"), "5.0");
+    Release findbugs = new Release(Plugin.factory("findbugs"), "3.0").addOutgoingDependency(java);
+
+    InstallPlan plan = InstallPlan.create(asList(findbugs));
+
+    assertThat(plan.getWaves()).containsExactly(asList(findbugs));
+  }
+
+  @Test
+  public void dependency_on_another_version_of_a_plugin_of_the_plan_is_an_edge() {
+    Plugin java = Plugin.factory("java");
+    Release java40 = new Release(java, "4.0");
+    Release java50 = new Release(java, "5.0");
+    Release findbugs = new Release(Plugin.factory("findbugs"), "3.0").addOutgoingDependency(java40);
+
+    InstallPlan plan = InstallPlan.create(asList(findbugs, java50));
+
+    assertThat(plan.getReleases()).containsExactly(java50, findbugs);
+  }
+
+  @Test
+  public void empty_plan() {
+    InstallPlan plan = InstallPlan.create(Collections.emptyList());
+
+    assertThat(plan.isEmpty()).isTrue();
+    assertThat(plan.getReleases()).isEmpty();
+  }
+
+  @Test
+  public void fail_if_releases_depend_on_each_other() {
+    Release foo = new Release(Plugin.factory("foo"), "1.0");
+    Release bar = new Release(Plugin.factory("bar"), "1.0").addOutgoingDependency(foo);
+    foo.addOutgoingDependency(bar);
+    Release other = new Release(Plugin.factory("other"), "1.0");
+
+    try {
+      InstallPlan.create(asList(other, foo, bar));
+      fail();
+    } catch (DependencyCycleException e) {
+      assertThat(e).hasMessage("There is a dependency cycle between plugins 'foo', 'bar' that must be cut.");
+    }
+  }
+}
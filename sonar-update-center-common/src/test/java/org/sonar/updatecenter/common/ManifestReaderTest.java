@@ -0,0 +1,111 @@
+/*
+ * SonarSource :: Update Center :: Common
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.common;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ManifestReaderTest {
+
+  private static final String MANIFEST = "Manifest-Version: 1.0\r\nPlugin-Key: foo\r\nPlugin-Version: 1.0\r\n\r\n";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void read_same_manifest_as_jar_file() throws Exception {
+    for (String name : new String[] {"checkstyle-plugin.jar", "old-plugin.jar", "plugin-with-devs.jar", "plugin-with-require-plugins.jar", "plugin-with-sources.jar"}) {
+      File jar = new File(getClass().getResource("/org/sonar/updatecenter/common/PluginManifestTest/" + name).toURI());
+      try (JarFile jarFile = new JarFile(jar)) {
+        assertThat(ManifestReader.read(jar)).isEqualTo(jarFile.getManifest());
+      }
+    }
+  }
+
+  @Test
+  public void read_deflated_manifest_after_other_entries() throws Exception {
+    File jar = temp.newFile("foo.jar");
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+      for (int i = 0; i < 100; i++) {
+        zip.putNextEntry(new ZipEntry("org/foo/Class" + i + ".class"));
+        zip.write(new byte[1000]);
+      }
+      zip.putNextEntry(new ZipEntry(JarFile.MANIFEST_NAME));
+      zip.write(MANIFEST.getBytes(StandardCharsets.UTF_8));
+      zip.setComment("an archive with a comment");
+    }
+
+    Manifest manifest = ManifestReader.read(jar);
+
+    assertThat(manifest.getMainAttributes().getValue("Plugin-Key")).isEqualTo("foo");
+    assertThat(manifest.getMainAttributes().getValue("Plugin-Version")).isEqualTo("1.0");
+  }
+
+  @Test
+  public void read_stored_manifest() throws Exception {
+    byte[] bytes = MANIFEST.getBytes(StandardCharsets.UTF_8);
+    ZipEntry entry = new ZipEntry("meta-inf/manifest.mf");
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(bytes.length);
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    entry.setCrc(crc.getValue());
+    File jar = temp.newFile("foo.jar");
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+      zip.putNextEntry(entry);
+      zip.write(bytes);
+    }
+
+    assertThat(ManifestReader.read(jar).getMainAttributes().getValue("Plugin-Key")).isEqualTo("foo");
+  }
+
+  @Test
+  public void return_null_if_no_manifest() throws Exception {
+    File jar = temp.newFile("foo.jar");
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+      zip.putNextEntry(new ZipEntry("foo.txt"));
+      zip.write(1);
+    }
+
+    assertThat(ManifestReader.read(jar)).isNull();
+  }
+
+  @Test(expected = ZipException.class)
+  public void fail_if_not_an_archive() throws IOException {
+    File file = temp.newFile("foo.jar");
+    Files.write(file.toPath(), "this is not a zip file, but it is long enough".getBytes(StandardCharsets.UTF_8));
+
+    ManifestReader.read(file);
+  }
+}
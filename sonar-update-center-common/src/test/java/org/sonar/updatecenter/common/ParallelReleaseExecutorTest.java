@@ -0,0 +1,140 @@
+/*
+ * SonarSource :: Update Center :: Common
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ParallelReleaseExecutorTest {
+
+  @Test
+  public void execute_dependencies_first() {
+    Release java = new Release(Plugin.factory("java"), "5.0");
+    Release findbugs = new Release(Plugin.factory("findbugs"), "3.0").addOutgoingDependency(java);
+    Release pmd = new Release(Plugin.factory("pmd"), "2.0").addOutgoingDependency(java);
+    Release checks = new Release(Plugin.factory("checks"), "1.0").addOutgoingDependency(findbugs).addOutgoingDependency(pmd);
+    List<Release> executed = new CopyOnWriteArrayList<>();
+
+    new ParallelReleaseExecutor(4).execute(asList(checks, findbugs, pmd, java), executed::add);
+
+    assertThat(executed).hasSize(4);
+    assertThat(executed.get(0)).isEqualTo(java);
+    assertThat(executed.subList(1, 3)).containsOnly(findbugs, pmd);
+    assertThat(executed.get(3)).isEqualTo(checks);
+  }
+
+  @Test
+  public void execute_independent_releases_concurrently() {
+    Release foo = new Release(Plugin.factory("foo"), "1.0");
+    Release bar = new Release(Plugin.factory("bar"), "1.0");
+    CountDownLatch bothStarted = new CountDownLatch(2);
+
+    new ParallelReleaseExecutor(2).execute(asList(foo, bar), release -> {
+      bothStarted.countDown();
+      // would time out if releases were processed one after the other
+      assertThat(bothStarted.await(10, TimeUnit.SECONDS)).isTrue();
+    });
+  }
+
+  @Test
+  public void do_not_exceed_parallelism() {
+    List<Release> releases = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      releases.add(new Release(Plugin.factory("plugin" + i), "1.0"));
+    }
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+
+    new ParallelReleaseExecutor(3).execute(releases, release -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      Thread.sleep(5);
+      running.decrementAndGet();
+    });
+
+    assertThat(maxRunning.get()).isBetween(1, 3);
+  }
+
+  @Test
+  public void execute_all_releases_of_referential() {
+    Plugin foo = Plugin.factory("foo");
+    foo.addRelease("1.0");
+    foo.addRelease("1.1");
+    foo.setDevRelease(new Release(foo, "1.2-SNAPSHOT"));
+    Plugin bar = Plugin.factory("bar");
+    bar.addRelease("2.0");
+    List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+    new ParallelReleaseExecutor(2).execute(PluginReferential.create(asList(foo, bar)), release -> executed.add(release.getKey() + ":" + release.getVersion()));
+
+    assertThat(executed).containsOnly("foo:1.0", "foo:1.1", "foo:1.2-SNAPSHOT", "bar:2.0");
+  }
+
+  @Test
+  public void do_not_execute_dependents_of_failed_release() {
+    Release java = new Release(Plugin.factory("java"), "5.0");
+    Release findbugs = new Release(Plugin.factory("findbugs"), "3.0").addOutgoingDependency(java);
+    List<Release> executed = new CopyOnWriteArrayList<>();
+
+    try {
+      new ParallelReleaseExecutor(2).execute(asList(findbugs, java), release -> {
+        executed.add(release);
+        throw new IllegalArgumentException("unreachable");
+      });
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Fail to process release java 5.0");
+      assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class).hasMessage("unreachable");
+    }
+    assertThat(executed).containsOnly(java);
+  }
+
+  @Test
+  public void fail_on_releases_requiring_each_other() {
+    Plugin foo = Plugin.factory("foo");
+    Plugin bar = Plugin.factory("bar");
+    Release foo10 = new Release(foo, "1.0").addOutgoingDependency(new Release(bar, "1.0"));
+    Release bar20 = new Release(bar, "2.0").addOutgoingDependency(new Release(foo, "2.0"));
+    Release baz = new Release(Plugin.factory("baz"), "1.0");
+    List<Release> executed = new CopyOnWriteArrayList<>();
+
+    try {
+      new ParallelReleaseExecutor(2).execute(asList(foo10, bar20, baz), executed::add);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Fail to process releases with cyclic dependencies: foo 1.0, bar 2.0");
+    }
+    assertThat(executed).containsOnly(baz);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_parallelism_is_not_positive() {
+    new ParallelReleaseExecutor(0);
+  }
+}
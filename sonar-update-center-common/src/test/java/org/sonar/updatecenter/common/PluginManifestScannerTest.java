@@ -0,0 +1,127 @@
+/*
+ * SonarSource :: Update Center :: Common
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.common;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.updatecenter.common.exception.IncompatiblePluginVersionException;
+import org.sonar.updatecenter.common.exception.PluginNotFoundException;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PluginManifestScannerTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void scan_plugins_of_directory() throws Exception {
+    File dir = temp.newFolder();
+    File plugin = copy("checkstyle-plugin.jar", new File(dir, "checkstyle-plugin.jar"));
+    File notPlugin = copy("old-plugin.jar", new File(dir, "sub/old-plugin.jar"));
+    File corrupted = new File(dir, "corrupted.jar");
+    Files.write(corrupted.toPath(), "not a zip".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(dir, "README.txt").toPath(), "ignored".getBytes(StandardCharsets.UTF_8));
+
+    PluginManifestScanner.Result result = new PluginManifestScanner(2).scan(dir);
+
+    Plugin checkstyle = result.getPluginReferential().findPlugin("checkstyle");
+    assertThat(checkstyle.getLastRelease().getVersion().getName()).isEqualTo("3.1.1");
+    assertThat(result.getPluginReferential().getPlugins()).hasSize(1);
+    assertThat(result.getErrors().keySet()).containsExactly(corrupted, notPlugin);
+    assertThat(result.getErrors().get(notPlugin)).hasMessageContaining("File is not a plugin");
+    assertThat(result.getErrors()).doesNotContainKey(plugin);
+  }
+
+  @Test
+  public void report_plugins_that_can_not_be_converted() throws Exception {
+    File dir = temp.newFolder();
+    File foo = plugin(new File(dir, "foo.jar"), "foo", "1.0", "");
+    File bar = plugin(new File(dir, "bar.jar"), "bar", "1.0", "missing:1.0");
+    File baz = plugin(new File(dir, "baz.jar"), "baz", "1.0", "foo:2.0");
+    File qux = plugin(new File(dir, "qux.jar"), "qux", "1.0", "foo:1.0");
+
+    PluginManifestScanner.Result result = new PluginManifestScanner(2).scan(dir);
+
+    assertThat(result.getErrors().keySet()).containsExactly(bar, baz);
+    assertThat(result.getErrors().get(bar)).isInstanceOf(PluginNotFoundException.class);
+    assertThat(result.getErrors().get(baz)).isInstanceOf(IncompatiblePluginVersionException.class);
+    assertThat(result.getErrors()).doesNotContainKeys(foo, qux);
+    assertThat(result.getPluginReferential().findLastReleasesWithDependencies("foo")).containsExactly("foo", "qux");
+  }
+
+  @Test
+  public void report_files_of_already_loaded_plugins() throws Exception {
+    File dir = temp.newFolder();
+    File bar = plugin(new File(dir, "bar.jar"), "bar", "1.0", "");
+    File foo = plugin(new File(dir, "foo-1.0.jar"), "foo", "1.0", "");
+    File duplicate = plugin(new File(dir, "foo-2.0.jar"), "foo", "2.0", "bar:1.0");
+
+    PluginManifestScanner.Result result = new PluginManifestScanner(2).scan(dir);
+
+    assertThat(result.getErrors().keySet()).containsExactly(duplicate);
+    assertThat(result.getErrors().get(duplicate))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessageContaining("Plugin 'foo' of file " + duplicate.getAbsolutePath() + " is already provided by file " + foo.getAbsolutePath());
+    assertThat(result.getPluginReferential().findPlugin("foo").getLastRelease().getVersion().getName()).isEqualTo("1.0");
+    assertThat(result.getPluginReferential().findLastReleasesWithDependencies("bar")).containsExactly("bar");
+    assertThat(result.getErrors()).doesNotContainKeys(bar, foo);
+  }
+
+  @Test
+  public void scan_no_files() {
+    PluginManifestScanner.Result result = new PluginManifestScanner(4).scan(emptyList());
+
+    assertThat(result.getPluginReferential().getPlugins()).isEmpty();
+    assertThat(result.getErrors()).isEmpty();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_parallelism_is_not_positive() {
+    new PluginManifestScanner(0);
+  }
+
+  private static File plugin(File file, String key, String version, String requirePlugins) throws Exception {
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().putValue(PluginManifest.KEY, key);
+    manifest.getMainAttributes().putValue(PluginManifest.VERSION, version);
+    manifest.getMainAttributes().putValue(PluginManifest.SONAR_VERSION, "6.7");
+    manifest.getMainAttributes().putValue(PluginManifest.REQUIRE_PLUGINS, requirePlugins);
+    new JarOutputStream(new FileOutputStream(file), manifest).close();
+    return file;
+  }
+
+  private File copy(String fixture, File to) throws Exception {
+    File from = new File(getClass().getResource("/org/sonar/updatecenter/common/PluginManifestTest/" + fixture).toURI());
+    Files.createDirectories(to.getParentFile().toPath());
+    Files.copy(from.toPath(), to.toPath());
+    return to;
+  }
+}
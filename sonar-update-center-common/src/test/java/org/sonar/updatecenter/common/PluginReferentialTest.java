@@ -87,6 +87,60 @@ public class PluginReferentialTest {
     assertThat(installablePlugins).containsOnly("foo", "foobis", "bar");
   }
 
+  @Test
+  public void should_return_each_release_key_to_remove_once() {
+    Plugin foo = Plugin.factory("foo");
+    Release foo10 = new Release(foo, "1.0");
+    foo.addRelease(foo10);
+
+    // left and right depend upon foo, top depends upon both left and right
+    Plugin left = Plugin.factory("left");
+    Release left10 = new Release(left, "1.0");
+    left.addRelease(left10);
+    Plugin right = Plugin.factory("right");
+    Release right10 = new Release(right, "1.0");
+    right.addRelease(right10);
+    Plugin top = Plugin.factory("top");
+    Release top10 = new Release(top, "1.0");
+    top.addRelease(top10);
+
+    PluginReferential pluginReferential = PluginReferential.create(asList(foo, left, right, top));
+    pluginReferential.addOutgoingDependency(left10, "foo", "1.0");
+    pluginReferential.addOutgoingDependency(right10, "foo", "1.0");
+    assertThat(pluginReferential.findLastReleasesWithDependencies("foo")).containsExactly("foo", "left", "right");
+
+    // dependents are computed from the current state of the referential
+    pluginReferential.addOutgoingDependency(top10, "left", "1.0");
+    pluginReferential.addOutgoingDependency(top10, "right", "1.0");
+    assertThat(pluginReferential.findLastReleasesWithDependencies("foo")).containsExactly("foo", "left", "right", "top");
+    assertThat(pluginReferential.findLastReleasesWithDependencies("right")).containsExactly("right", "top");
+  }
+
+  @Test
+  public void should_follow_releases_added_after_a_lookup() {
+    Plugin foo = Plugin.factory("foo");
+    Release foo10 = new Release(foo, "1.0");
+    foo.addRelease(foo10);
+    Plugin bar = Plugin.factory("bar");
+    Release bar10 = new Release(bar, "1.0");
+    bar.addRelease(bar10);
+
+    PluginReferential pluginReferential = PluginReferential.create(asList(foo, bar));
+    assertThat(pluginReferential.findLastReleasesWithDependencies("foo")).containsExactly("foo");
+
+    // the new last release of foo is required by bar, whereas foo 1.0 was not
+    Release foo20 = new Release(foo, "2.0");
+    foo.addRelease(foo20);
+    bar10.addOutgoingDependency(foo20);
+    foo20.addIncomingDependency(bar10);
+    assertThat(pluginReferential.findLastReleasesWithDependencies("foo")).containsExactly("foo", "bar");
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void should_throw_exception_when_looking_for_releases_to_remove_of_unknown_plugin() {
+    PluginReferential.create(asList(Plugin.factory("foo"))).findLastReleasesWithDependencies("bar");
+  }
+
   @Test
   public void should_add_dependency() {
     Plugin foo = Plugin.factory("foo");
@@ -19,9 +19,13 @@
  */
 package org.sonar.updatecenter.common;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 public class ReleaseTest {
 
@@ -50,6 +54,44 @@ public class ReleaseTest {
     assertThat(release.getIncomingDependencies()).hasSize(1);
   }
 
+  @Test
+  public void dependencies_are_read_only_live_views() {
+    Release release = new Release(Plugin.factory("fake"), Version.create("1.2"));
+    Set<Release> outgoing = release.getOutgoingDependencies();
+    Set<Release> incoming = release.getIncomingDependencies();
+    Release foo = new Release(Plugin.factory("foo"), Version.create("1.0"));
+    Release fake2 = new Release(Plugin.factory("fake2"), Version.create("1.2"));
+
+    release.addOutgoingDependency(foo);
+    release.addIncomingDependency(fake2);
+
+    assertThat(outgoing).containsOnly(foo);
+    assertThat(incoming).containsOnly(fake2);
+    try {
+      outgoing.add(fake2);
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // read-only
+    }
+  }
+
+  @Test
+  public void visit_dependencies() {
+    Release release = new Release(Plugin.factory("fake"), Version.create("1.2"));
+    Release foo = new Release(Plugin.factory("foo"), Version.create("1.0"));
+    Release bar = new Release(Plugin.factory("bar"), Version.create("1.0"));
+    Release fake2 = new Release(Plugin.factory("fake2"), Version.create("1.2"));
+    release.addOutgoingDependency(foo).addOutgoingDependency(bar).addIncomingDependency(fake2);
+
+    List<Release> outgoing = new ArrayList<>();
+    release.forEachOutgoing(outgoing::add);
+    List<Release> incoming = new ArrayList<>();
+    release.forEachIncoming(incoming::add);
+
+    assertThat(outgoing).containsOnly(foo, bar);
+    assertThat(incoming).containsOnly(fake2);
+  }
+
   @Test
   public void should_add_required_sonar_versions() {
     Release release = new Release(Plugin.factory("squid"), "1.0");
@@ -413,4 +413,17 @@ public class UpdateCenterDeserializerTest {
       assertThat(clirr.getRelease(Version.create("1.1")).isArchived()).isFalse();
     }
   }
+
+  @Test
+  public void should_fail_on_invalid_archived_release() throws IOException {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("issue while processing plugin clirr");
+
+    try (InputStream input = getClass().getResourceAsStream("/org/sonar/updatecenter/common/UpdateCenterDeserializerTest/plugin-with-archived-versions.properties")) {
+      Properties props = new Properties();
+      props.load(input);
+      props.setProperty("clirr.1.0.date", "not a date");
+      new UpdateCenterDeserializer(Mode.PROD, false).fromProperties(props);
+    }
+  }
 }
@@ -310,6 +310,31 @@ public class UpdateCenterTest {
     assertThat(getRelease("foo", "1.1", installablePlugins)).isNotNull();
   }
 
+  @Test
+  public void return_install_plan_with_dependencies_first() {
+    Plugin foo = Plugin.factory("foo");
+    Release foo10 = new Release(foo, "1.0").addRequiredSonarVersions("2.0").setDownloadUrl("http://server/foo-1.0.jar");
+    Release foo11 = new Release(foo, "1.1").addRequiredSonarVersions("2.1").setDownloadUrl("http://server/foo-1.1.jar");
+    foo.addRelease(foo10);
+    foo.addRelease(foo11);
+
+    // foobis depends upon foo
+    Plugin foobis = Plugin.factory("foobis");
+    Release foobis11 = new Release(foobis, "1.1").addRequiredSonarVersions("2.1").setDownloadUrl("http://server/foobis-1.1.jar");
+    foobis.addRelease(foobis11);
+
+    PluginReferential pluginReferential = PluginReferential.create(asList(foo, foobis));
+    pluginReferential.addOutgoingDependency(foobis11, "foo", "1.0");
+
+    Sonar sonar = (Sonar) new Sonar().addRelease("2.1").getArtifact();
+    UpdateCenter updateCenter = UpdateCenter.create(pluginReferential, sonar).setInstalledSonarVersion(Version.create("2.1"));
+
+    // foobis requires foo 1.0 but foo 1.1 is the one to install
+    InstallPlan plan = updateCenter.findInstallPlan("foobis", Version.create("1.1"));
+    assertThat(plan.getReleases()).containsExactly(foo11, foobis11);
+    assertThat(plan.getWaves()).containsExactly(asList(foo11), asList(foobis11));
+  }
+
   @Test(expected = IncompatiblePluginVersionException.class)
   public void throw_exception_if_dependency_not_found() {
     Plugin foo = Plugin.factory("foo");
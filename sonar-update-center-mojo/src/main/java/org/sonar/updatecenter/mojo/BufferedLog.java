@@ -0,0 +1,131 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Keeps the messages logged by a background task, so that they can be written to the real log
+ * in a deterministic order, whatever the order in which tasks complete.
+ */
+class BufferedLog implements Log {
+
+  private final Log target;
+  private final List<Consumer<Log>> messages = new ArrayList<>();
+
+  BufferedLog(Log target) {
+    this.target = target;
+  }
+
+  /**
+   * Writes the buffered messages to the target log, then forgets them
+   */
+  synchronized void flush() {
+    messages.forEach(message -> message.accept(target));
+    messages.clear();
+  }
+
+  private synchronized void add(Consumer<Log> message) {
+    messages.add(message);
+  }
+
+  @Override
+  public boolean isDebugEnabled() {
+    return target.isDebugEnabled();
+  }
+
+  @Override
+  public void debug(CharSequence content) {
+    add(l -> l.debug(content));
+  }
+
+  @Override
+  public void debug(CharSequence content, Throwable error) {
+    add(l -> l.debug(content, error));
+  }
+
+  @Override
+  public void debug(Throwable error) {
+    add(l -> l.debug(error));
+  }
+
+  @Override
+  public boolean isInfoEnabled() {
+    return target.isInfoEnabled();
+  }
+
+  @Override
+  public void info(CharSequence content) {
+    add(l -> l.info(content));
+  }
+
+  @Override
+  public void info(CharSequence content, Throwable error) {
+    add(l -> l.info(content, error));
+  }
+
+  @Override
+  public void info(Throwable error) {
+    add(l -> l.info(error));
+  }
+
+  @Override
+  public boolean isWarnEnabled() {
+    return target.isWarnEnabled();
+  }
+
+  @Override
+  public void warn(CharSequence content) {
+    add(l -> l.warn(content));
+  }
+
+  @Override
+  public void warn(CharSequence content, Throwable error) {
+    add(l -> l.warn(content, error));
+  }
+
+  @Override
+  public void warn(Throwable error) {
+    add(l -> l.warn(error));
+  }
+
+  @Override
+  public boolean isErrorEnabled() {
+    return target.isErrorEnabled();
+  }
+
+  @Override
+  public void error(CharSequence content) {
+    add(l -> l.error(content));
+  }
+
+  @Override
+  public void error(CharSequence content, Throwable error) {
+    add(l -> l.error(content, error));
+  }
+
+  @Override
+  public void error(Throwable error) {
+    add(l -> l.error(error));
+  }
+}
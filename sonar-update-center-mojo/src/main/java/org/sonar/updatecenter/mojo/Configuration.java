@@ -21,6 +21,9 @@ package org.sonar.updatecenter.mojo;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.logging.Log;
 import org.sonar.updatecenter.common.UpdateCenter;
@@ -29,9 +32,19 @@ import org.sonar.updatecenter.common.UpdateCenterDeserializer.Mode;
 
 class Configuration {
 
+  /**
+   * Default directory of the cache of downloaded files, shared by all the executions of the user
+   */
+  static final File DEFAULT_CACHE_DIR = new File(System.getProperty("user.home"), ".sonar-update-center");
+
   private File outputDir;
   private File inputFile;
   private UpdateCenter updateCenter;
+  private File cacheDir;
+  private HttpDownloader.LocalFileMode localFileMode = HttpDownloader.LocalFileMode.COPY;
+  private int downloadParallelism = 1;
+  private int maxConnectionsPerHost = Integer.MAX_VALUE;
+  private boolean precompress = false;
 
   Configuration(File outputDir, File inputFile, boolean devMode, boolean ignoreErrors, boolean includeArchives, Log log) {
     if (!inputFile.exists() || !inputFile.isFile()) {
@@ -43,6 +56,7 @@ class Configuration {
       throw new IllegalStateException("Fail to create the output directory: " + outputDir.getAbsolutePath(), e);
     }
     this.outputDir = outputDir;
+    this.cacheDir = DEFAULT_CACHE_DIR;
     this.inputFile = inputFile;
     log(log);
     try {
@@ -75,4 +89,68 @@ class Configuration {
   UpdateCenter getUpdateCenter() {
     return this.updateCenter;
   }
+
+  File getCacheDir() {
+    return cacheDir;
+  }
+
+  /**
+   * Directory of the cache of downloaded files and of the index of their manifests, which can be shared by several
+   * output directories. It must not be in the output directory, which is published.
+   */
+  Configuration setCacheDir(@Nullable File cacheDir) {
+    this.cacheDir = cacheDir != null ? cacheDir : DEFAULT_CACHE_DIR;
+    return this;
+  }
+
+  HttpDownloader.LocalFileMode getLocalFileMode() {
+    return localFileMode;
+  }
+
+  Configuration setLocalFileMode(@Nullable HttpDownloader.LocalFileMode localFileMode) {
+    this.localFileMode = localFileMode != null ? localFileMode : HttpDownloader.LocalFileMode.COPY;
+    return this;
+  }
+
+  int getDownloadParallelism() {
+    return downloadParallelism;
+  }
+
+  /**
+   * Number of plugin releases that are downloaded and read concurrently
+   */
+  Configuration setDownloadParallelism(int downloadParallelism) {
+    if (downloadParallelism < 1) {
+      throw new IllegalArgumentException("downloadParallelism must be strictly positive: " + downloadParallelism);
+    }
+    this.downloadParallelism = downloadParallelism;
+    return this;
+  }
+
+  int getMaxConnectionsPerHost() {
+    return maxConnectionsPerHost;
+  }
+
+  Configuration setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+    if (maxConnectionsPerHost < 1) {
+      throw new IllegalArgumentException("maxConnectionsPerHost must be strictly positive: " + maxConnectionsPerHost);
+    }
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+    return this;
+  }
+
+  /**
+   * Compressors of the generated text files. Empty if precompression is disabled.
+   */
+  List<OutputCompressor> getOutputCompressors() {
+    return precompress ? OutputCompressor.loadAll() : Collections.emptyList();
+  }
+
+  /**
+   * Should compressed copies of the generated text files be written, see {@link OutputCompressor}
+   */
+  Configuration setPrecompress(boolean precompress) {
+    this.precompress = precompress;
+    return this;
+  }
 }
@@ -0,0 +1,245 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Cache of downloaded files, which can be shared by several generations running on the same machine.
+ * Files are stored once in "blobs", named by their SHA-256, and an index maps the download URLs to these
+ * digests and to the metadata of their last download. Blobs and index entries are never written in place
+ * but moved atomically from a temporary file.
+ */
+class ContentAddressedCache {
+
+  private final File blobsDir;
+  private final File urlsDir;
+  private final File tmpDir;
+
+  ContentAddressedCache(File dir) {
+    this.blobsDir = new File(dir, "blobs");
+    this.urlsDir = new File(dir, "urls");
+    this.tmpDir = new File(dir, "tmp");
+  }
+
+  File createTempFile() throws IOException {
+    FileUtils.forceMkdir(tmpDir);
+    return Files.createTempFile(tmpDir.toPath(), "download", ".tmp").toFile();
+  }
+
+  /**
+   * Opens the partial download of the URL, which is kept between attempts and executions so that the download can be
+   * resumed. If another process is already downloading the same URL, a new temporary file is used instead.
+   */
+  PartFile openPart(String url) throws IOException {
+    FileUtils.forceMkdir(tmpDir);
+    String name = Digests.sha256(url);
+    File lockFile = new File(tmpDir, name + ".lock");
+    FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (!tryLock(channel, lockFile)) {
+      channel.close();
+      return new PartFile(createTempFile(), null, null);
+    }
+    return new PartFile(new File(tmpDir, name + ".part"), lockFile, channel);
+  }
+
+  /**
+   * Lock files are deleted once the download is complete, so the file locked here may have been deleted by its
+   * previous owner in the meantime. A token is written to the locked file and read back from its path to check
+   * that it is still the current lock file.
+   */
+  private static boolean tryLock(FileChannel channel, File lockFile) throws IOException {
+    FileLock lock;
+    try {
+      lock = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      lock = null;
+    }
+    if (lock == null) {
+      return false;
+    }
+    byte[] token = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+    channel.truncate(0);
+    channel.write(ByteBuffer.wrap(token), 0);
+    channel.force(false);
+    try {
+      return Arrays.equals(token, Files.readAllBytes(lockFile.toPath()));
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Deletes the temporary files left by interrupted executions. Part files are kept, as they can still be resumed.
+   */
+  void deleteStaleTempFiles(long maxAgeMillis) {
+    File[] files = tmpDir.listFiles((dir, filename) -> filename.endsWith(".tmp"));
+    if (files != null) {
+      long limit = System.currentTimeMillis() - maxAgeMillis;
+      for (File file : files) {
+        if (file.lastModified() < limit) {
+          FileUtils.deleteQuietly(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the verified file previously downloaded from this URL, or null if not in cache
+   */
+  @CheckForNull
+  File find(String url) {
+    File indexFile = indexFile(url);
+    if (!indexFile.isFile()) {
+      return null;
+    }
+    try {
+      File blob = blobFile(FileUtils.readFileToString(indexFile, StandardCharsets.UTF_8).trim());
+      return blob.isFile() ? blob : null;
+    } catch (IOException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return the file storing the HTTP validators of the last download of the URL, see {@link DownloadMetadata}
+   */
+  File getMetadataFile(String url) {
+    return new File(urlsDir, Digests.sha256(url) + ".properties");
+  }
+
+  boolean contains(String sha256) {
+    return blobFile(sha256).isFile();
+  }
+
+  boolean isBlob(File file) {
+    File parent = file.getParentFile();
+    return parent != null && blobsDir.equals(parent.getParentFile());
+  }
+
+  /**
+   * @return true if the file is a link to the blob, or has the same content
+   */
+  static boolean hasContent(File file, File blob) throws IOException {
+    if (Files.isSameFile(file.toPath(), blob.toPath())) {
+      return true;
+    }
+    // blobs are named by their SHA-256
+    return file.length() == blob.length() && Digests.digest(file, Digests.SHA256)[0].equals(blob.getName());
+  }
+
+  /**
+   * Moves the file to the cache and records that it has been downloaded from the URL.
+   *
+   * @param file    a temporary file, see {@link #createTempFile()}
+   * @param sha256 the digest of the file
+   * @return the blob
+   */
+  File add(String url, File file, String sha256) throws IOException {
+    File blob = blobFile(sha256);
+    if (blob.isFile() && blob.length() == file.length()) {
+      FileUtils.deleteQuietly(file);
+    } else {
+      // permissions are kept, as blobs are hard-linked from output directories, which are never written in place
+      FileUtils.forceMkdir(blob.getParentFile());
+      Files.move(file.toPath(), blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    File index = createTempFile();
+    FileUtils.write(index, sha256, StandardCharsets.UTF_8);
+    FileUtils.forceMkdir(urlsDir);
+    Files.move(index.toPath(), indexFile(url).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    return blob;
+  }
+
+  static class PartFile implements Closeable {
+    private final File file;
+    private final File lockFile;
+    private final FileChannel lockChannel;
+
+    private PartFile(File file, @Nullable File lockFile, @Nullable FileChannel lockChannel) {
+      this.file = file;
+      this.lockFile = lockFile;
+      this.lockChannel = lockChannel;
+    }
+
+    File getFile() {
+      return file;
+    }
+
+    /**
+     * @return the file storing the HTTP validators of the partial content, see {@link DownloadMetadata}
+     */
+    File getValidatorsFile() {
+      return new File(file.getPath() + ".properties");
+    }
+
+    boolean isResumable() {
+      return lockChannel != null;
+    }
+
+    /**
+     * The part is kept if it has not been moved to cache, unless the download can't be resumed. The lock file
+     * is kept as long as the part.
+     */
+    @Override
+    public void close() throws IOException {
+      if (!file.exists() || !isResumable()) {
+        FileUtils.deleteQuietly(file);
+        FileUtils.deleteQuietly(getValidatorsFile());
+        if (lockFile != null) {
+          // still locked, see tryLock()
+          FileUtils.deleteQuietly(lockFile);
+        }
+      }
+      if (lockChannel != null) {
+        // closing the channel releases the lock
+        lockChannel.close();
+      }
+    }
+  }
+
+  private File indexFile(String url) {
+    return new File(urlsDir, Digests.sha256(url));
+  }
+
+  private File blobFile(String sha256) {
+    if (!sha256.matches("[0-9a-f]{64}")) {
+      throw new IllegalArgumentException("Invalid digest: " + sha256);
+    }
+    return new File(new File(blobsDir, sha256.substring(0, 2)), sha256);
+  }
+}
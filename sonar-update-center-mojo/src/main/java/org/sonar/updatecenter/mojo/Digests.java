@@ -0,0 +1,98 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Checksum;
+import javax.annotation.Nullable;
+
+public final class Digests {
+
+  public static final String SHA1 = "SHA-1";
+  public static final String SHA256 = "SHA-256";
+
+  private Digests() {
+    // only static methods
+  }
+
+  public static String sha256(String s) {
+    return sha256(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static String sha256(byte[] bytes) {
+    return toHex(newDigest(SHA256).digest(bytes));
+  }
+
+  /**
+   * @return the hexadecimal digests of the file, in the same order as the algorithms. The file is read only once.
+   */
+  public static String[] digest(File file, String... algorithms) throws IOException {
+    return digest(file, null, algorithms);
+  }
+
+  /**
+   * Same as {@link #digest(File, String...)}, the checksum, for example a CRC-32, being updated in the same pass
+   */
+  public static String[] digest(File file, @Nullable Checksum checksum, String... algorithms) throws IOException {
+    MessageDigest[] digests = new MessageDigest[algorithms.length];
+    for (int i = 0; i < algorithms.length; i++) {
+      digests[i] = newDigest(algorithms[i]);
+    }
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream input = Files.newInputStream(file.toPath())) {
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        for (MessageDigest digest : digests) {
+          digest.update(buffer, 0, read);
+        }
+        if (checksum != null) {
+          checksum.update(buffer, 0, read);
+        }
+      }
+    }
+    String[] result = new String[algorithms.length];
+    for (int i = 0; i < algorithms.length; i++) {
+      result[i] = toHex(digests[i].digest());
+    }
+    return result;
+  }
+
+  private static MessageDigest newDigest(String algorithm) {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Digest algorithm is not supported: " + algorithm, e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * HTTP validators of a downloaded file, stored in a properties file beside the cache, so that
+ * the file can be refreshed with a conditional request.
+ */
+class DownloadMetadata {
+
+  private static final String URL = "url";
+  private static final String ETAG = "etag";
+  private static final String LAST_MODIFIED = "lastModified";
+  private static final String CONTENT_LENGTH = "contentLength";
+
+  private final String url;
+  private final String etag;
+  private final String lastModified;
+  private final long contentLength;
+
+  DownloadMetadata(String url, @Nullable String etag, @Nullable String lastModified, long contentLength) {
+    this.url = url;
+    this.etag = etag;
+    this.lastModified = lastModified;
+    this.contentLength = contentLength;
+  }
+
+  String getUrl() {
+    return url;
+  }
+
+  @CheckForNull
+  String getEtag() {
+    return etag;
+  }
+
+  @CheckForNull
+  String getLastModified() {
+    return lastModified;
+  }
+
+  long getContentLength() {
+    return contentLength;
+  }
+
+  boolean hasValidators() {
+    return etag != null || lastModified != null;
+  }
+
+  /**
+   * @return the validator to send in If-Range, or null if the content can't be resumed safely. Weak ETags
+   * are not allowed in If-Range, see RFC 7233.
+   */
+  @CheckForNull
+  String getIfRangeValidator() {
+    if (etag != null && !etag.startsWith("W/")) {
+      return etag;
+    }
+    return lastModified;
+  }
+
+  /**
+   * @return true if the metadata have been recorded for this URL and this version of the file
+   */
+  boolean isValidFor(String url, File file) {
+    return this.url.equals(url) && file.isFile() && file.length() == contentLength;
+  }
+
+  /**
+   * @return null if the file does not exist or can't be read. Metadata are only an optimization, so a corrupted file
+   * is ignored.
+   */
+  @CheckForNull
+  static DownloadMetadata load(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    Properties props = new Properties();
+    try (InputStream input = Files.newInputStream(file.toPath())) {
+      props.load(input);
+      String url = props.getProperty(URL);
+      String contentLength = props.getProperty(CONTENT_LENGTH);
+      if (url == null || contentLength == null) {
+        return null;
+      }
+      return new DownloadMetadata(url, props.getProperty(ETAG), props.getProperty(LAST_MODIFIED), Long.parseLong(contentLength));
+    } catch (IOException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  void save(File file) throws IOException {
+    Properties props = new Properties();
+    props.setProperty(URL, url);
+    if (etag != null) {
+      props.setProperty(ETAG, etag);
+    }
+    if (lastModified != null) {
+      props.setProperty(LAST_MODIFIED, lastModified);
+    }
+    props.setProperty(CONTENT_LENGTH, String.valueOf(contentLength));
+    FileUtils.forceMkdir(file.getParentFile());
+    try (OutputStream output = Files.newOutputStream(file.toPath())) {
+      props.store(output, null);
+    }
+  }
+}
@@ -19,36 +19,82 @@
  */
 package org.sonar.updatecenter.mojo;
 
+import freemarker.template.Configuration;
 import freemarker.template.DefaultObjectWrapper;
 import freemarker.template.Template;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+/**
+ * The FreeMarker configuration is shared by all the generators of the process. Templates are compiled
+ * once, then reused for all the output files. Both the configuration and the compiled templates are
+ * thread-safe.
+ */
 public class FreeMarkerUtils {
 
+  private static final Configuration CONFIGURATION = createConfiguration();
+  private static final Map<String, Template> TEMPLATES = new ConcurrentHashMap<>();
+
   private FreeMarkerUtils() {
   }
 
-  public static void print(Map<String, Object> dataModel, File toFile, String templateName) {
-    try (FileOutputStream fileOutputStream = new FileOutputStream(toFile);
-      Writer writer = new OutputStreamWriter(fileOutputStream, UTF_8)) {
-      freemarker.log.Logger.selectLoggerLibrary(freemarker.log.Logger.LIBRARY_NONE);
-      freemarker.template.Configuration cfg = new freemarker.template.Configuration();
-      cfg.setClassForTemplateLoading(PluginHeader.class, "");
-      cfg.setObjectWrapper(new DefaultObjectWrapper());
-
-      Template template = cfg.getTemplate(templateName);
-
-      template.process(dataModel, writer);
-      writer.flush();
+  /**
+   * Renders the template in memory, then writes the file only if its content changed
+   */
+  public static void print(Map<String, Object> dataModel, File toFile, String templateName, OutputFiles output) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (Writer writer = new BufferedWriter(new OutputStreamWriter(bytes, UTF_8))) {
+        getTemplate(templateName).process(dataModel, writer);
+      }
+      output.write(toFile, bytes.toByteArray());
     } catch (Exception e) {
       throw new IllegalStateException("Fail to generate HTML to: " + toFile, e);
     }
   }
 
+  /**
+   * Compiles the templates, if not already done, so that failures are detected before generating files
+   */
+  public static void precompile(String... templateNames) {
+    for (String templateName : templateNames) {
+      try {
+        getTemplate(templateName);
+      } catch (UncheckedIOException e) {
+        throw new IllegalStateException("Fail to load template: " + templateName, e);
+      }
+    }
+  }
+
+  static Template getTemplate(String templateName) {
+    return TEMPLATES.computeIfAbsent(templateName, name -> {
+      try {
+        return CONFIGURATION.getTemplate(name);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  private static Configuration createConfiguration() {
+    try {
+      freemarker.log.Logger.selectLoggerLibrary(freemarker.log.Logger.LIBRARY_NONE);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("Fail to disable FreeMarker logs", e);
+    }
+    Configuration cfg = new Configuration();
+    cfg.setClassForTemplateLoading(PluginHeader.class, "");
+    cfg.setObjectWrapper(new DefaultObjectWrapper());
+    return cfg;
+  }
+
 }
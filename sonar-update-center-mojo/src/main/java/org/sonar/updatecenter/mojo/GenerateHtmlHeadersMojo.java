@@ -30,7 +30,7 @@ import org.apache.maven.plugins.annotations.Parameter;
 public class GenerateHtmlHeadersMojo extends AbstractMojo {
 
   /**
-   * The directory that contains generated files and cache of plugins.
+   * The directory that contains generated files and downloaded plugins.
    */
   @Parameter(property = "outputDir", required = true)
   private File outputDir;
@@ -47,10 +47,48 @@ public class GenerateHtmlHeadersMojo extends AbstractMojo {
   @Parameter(property = "ignoreErrors")
   private boolean ignoreErrors = false;
 
+  /**
+   * The directory of the cache of downloaded plugins and of their manifests, which is shared by the output
+   * directories. Default is ~/.sonar-update-center. It must not be in outputDir, which is published.
+   */
+  @Parameter(property = "cacheDir")
+  private File cacheDir;
+
+  /**
+   * How plugins with "file:" download URLs are made available in outputDir: COPY (default), LINK (hard link,
+   * falling back to a copy by the kernel) or SYMLINK (symbolic link to the original file)
+   */
+  @Parameter(property = "localFileMode")
+  private HttpDownloader.LocalFileMode localFileMode;
+
+  /**
+   * Number of plugin releases downloaded concurrently
+   */
+  @Parameter(property = "downloadParallelism")
+  private int downloadParallelism = 4;
+
+  /**
+   * Maximum number of simultaneous connections to a given host when downloading plugins
+   */
+  @Parameter(property = "maxConnectionsPerHost")
+  private int maxConnectionsPerHost = 4;
+
+  /**
+   * Should gzip copies (.gz) of the generated text files be written, so that they can be served precompressed.
+   * Other formats can be added, see {@link OutputCompressor}.
+   */
+  @Parameter(property = "precompress")
+  private boolean precompress = false;
+
   @Override
   public void execute() throws MojoExecutionException, MojoFailureException {
     try {
-      Configuration configuration = new Configuration(outputDir, inputFile, false, ignoreErrors, false, getLog());
+      Configuration configuration = new Configuration(outputDir, inputFile, false, ignoreErrors, false, getLog())
+        .setCacheDir(cacheDir)
+        .setLocalFileMode(localFileMode)
+        .setDownloadParallelism(downloadParallelism)
+        .setMaxConnectionsPerHost(maxConnectionsPerHost)
+        .setPrecompress(precompress);
       new Generator(configuration, getLog()).generateHtml();
     } catch (Exception e) {
       throw new MojoExecutionException("Fail to execute mojo", e);
@@ -66,4 +104,9 @@ public class GenerateHtmlHeadersMojo extends AbstractMojo {
     this.inputFile = f;
     return this;
   }
+
+  GenerateHtmlHeadersMojo setCacheDir(File d) {
+    this.cacheDir = d;
+    return this;
+  }
 }
@@ -37,7 +37,7 @@ import org.sonar.updatecenter.mojo.editions.generators.ZipsEditionGenerator;
 public class GenerateMetadataMojo extends AbstractMojo {
 
   /**
-   * The directory that contains generated files and cache of plugins.
+   * The directory that contains generated files and downloaded plugins.
    */
   @Parameter(property = "outputDir", required = true)
   File outputDir;
@@ -66,6 +66,39 @@ public class GenerateMetadataMojo extends AbstractMojo {
   @Parameter(property = "includeArchives")
   boolean includeArchives = false;
 
+  /**
+   * The directory of the cache of downloaded plugins and of their manifests, which is shared by the output
+   * directories. Default is ~/.sonar-update-center. It must not be in outputDir, which is published.
+   */
+  @Parameter(property = "cacheDir")
+  File cacheDir;
+
+  /**
+   * How plugins with "file:" download URLs are made available in outputDir: COPY (default), LINK (hard link,
+   * falling back to a copy by the kernel) or SYMLINK (symbolic link to the original file)
+   */
+  @Parameter(property = "localFileMode")
+  HttpDownloader.LocalFileMode localFileMode;
+
+  /**
+   * Number of plugin releases downloaded concurrently
+   */
+  @Parameter(property = "downloadParallelism")
+  int downloadParallelism = 4;
+
+  /**
+   * Maximum number of simultaneous connections to a given host when downloading plugins
+   */
+  @Parameter(property = "maxConnectionsPerHost")
+  int maxConnectionsPerHost = 4;
+
+  /**
+   * Should gzip copies (.gz) of the generated text files be written, so that they can be served precompressed.
+   * Other formats can be added, see {@link OutputCompressor}.
+   */
+  @Parameter(property = "precompress")
+  boolean precompress = false;
+
   /**
    * Base URL for hosting of editions
    */
@@ -87,31 +120,70 @@ public class GenerateMetadataMojo extends AbstractMojo {
   @Parameter(property = "editionBuildNumber")
   String editionBuildNumber;
 
+  /**
+   * Should zip files of editions be generated again only when their plugins change. Files of editionsOutputDir
+   * that are not generated anymore are then deleted. By default editionsOutputDir is cleaned and all files are
+   * generated again.
+   */
+  @Parameter(property = "incrementalEditions")
+  boolean incrementalEditions = false;
+
+  /**
+   * Should editions of different SonarQube versions that are composed of the same plugins share a single zip file.
+   * By default each edition gets its own zip file.
+   */
+  @Parameter(property = "deduplicateEditionZips")
+  boolean deduplicateEditionZips = false;
+
+  /**
+   * How plugins are added to zip files of editions: STORED (default, plugins are already compressed) or DEFLATED
+   */
+  @Parameter(property = "editionsZipCompression")
+  ZipsEditionGenerator.Compression editionsZipCompression = ZipsEditionGenerator.Compression.STORED;
+
+  /**
+   * Number of zip files of editions generated concurrently. Default is the number of available processors.
+   */
+  @Parameter(property = "editionsParallelism")
+  int editionsParallelism = Runtime.getRuntime().availableProcessors();
+
   @Override
   public void execute() throws MojoExecutionException, MojoFailureException {
     try {
-      Configuration configuration = new Configuration(outputDir, inputFile, devMode, ignoreErrors, includeArchives, getLog());
+      Configuration configuration = new Configuration(outputDir, inputFile, devMode, ignoreErrors, includeArchives, getLog())
+        .setCacheDir(cacheDir)
+        .setLocalFileMode(localFileMode)
+        .setDownloadParallelism(downloadParallelism)
+        .setMaxConnectionsPerHost(maxConnectionsPerHost)
+        .setPrecompress(precompress);
 
       // generate properties
       new Generator(configuration, getLog()).generateMetadata();
 
       // generate editions (json, zip files and html)
-      generateEditions(configuration.getUpdateCenter());
+      generateEditions(configuration);
 
     } catch (Exception e) {
       throw new MojoExecutionException("Fail to execute mojo", e);
     }
   }
 
-  private void generateEditions(UpdateCenter updateCenter) throws Exception {
+  private void generateEditions(Configuration configuration) throws Exception {
+    UpdateCenter updateCenter = configuration.getUpdateCenter();
     File jarsDir = outputDir;
     EditionTemplatesLoaderImpl templatesLoader = new EditionTemplatesLoaderImpl(editionTemplateProperties);
+    OutputFiles output = new OutputFiles(configuration.getOutputCompressors());
     EditionGenerator[] generators = {
-      new HtmlEditionGenerator(updateCenter, editionsDownloadBaseUrl),
-      new JsonEditionGenerator(editionsDownloadBaseUrl),
-      new ZipsEditionGenerator(jarsDir)
+      new HtmlEditionGenerator(updateCenter, editionsDownloadBaseUrl, output),
+      new JsonEditionGenerator(editionsDownloadBaseUrl, output),
+      new ZipsEditionGenerator(jarsDir, output)
+        .setCompression(editionsZipCompression)
+        .setParallelism(editionsParallelism)
     };
-    EditionsGenerator editionsGenerator = new EditionsGenerator(updateCenter, templatesLoader, editionBuildNumber);
+    EditionsGenerator editionsGenerator = new EditionsGenerator(updateCenter, templatesLoader, editionBuildNumber)
+      .setIncremental(incrementalEditions)
+      .setDeduplicateZips(deduplicateEditionZips);
     editionsGenerator.generateZipsJsonHtml(editionsOutputDir, generators);
+    output.writeChangedFiles(editionsOutputDir);
   }
 }
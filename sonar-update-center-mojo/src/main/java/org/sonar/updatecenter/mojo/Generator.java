@@ -22,7 +22,10 @@ package org.sonar.updatecenter.mojo;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
-import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.plugin.logging.Log;
 import org.sonar.updatecenter.common.Plugin;
@@ -37,6 +40,7 @@ import static org.apache.commons.io.FileUtils.forceMkdir;
 class Generator {
 
   private static final String HTML_HEADER_DIR = "html";
+  private static final String MANIFEST_INDEX = "manifests.json";
   private final Configuration configuration;
   private final Log log;
 
@@ -57,45 +61,94 @@ class Generator {
     generateMetadata(center);
   }
 
-  private void downloadReleases(UpdateCenter center) throws IOException, URISyntaxException {
-    HttpDownloader downloader = new HttpDownloader(configuration.getOutputDir(), log);
+  /**
+   * Releases are downloaded, their manifests are read and plugins are merged in a pipeline, see {@link ReleasePipeline}.
+   * Logs and changes of the referential are applied in the order of plugins and releases, so that the output
+   * does not depend on scheduling.
+   */
+  private void downloadReleases(UpdateCenter center) {
+    HttpDownloader downloader = new HttpDownloader(configuration.getOutputDir(), configuration.getCacheDir(), log, configuration.getMaxConnectionsPerHost())
+      .setLocalFileMode(configuration.getLocalFileMode());
     PluginReferential pluginReferential = center.getUpdateCenterPluginReferential();
-    for (Plugin plugin : pluginReferential.getPlugins()) {
-      log.info("Load plugin: " + plugin.getKey());
 
-      File masterJar = null;
+    Map<Release, BufferedLog> logsByRelease = new HashMap<>();
+    for (Plugin plugin : pluginReferential.getPlugins()) {
       for (Release release : plugin.getAllReleases()) {
-        if (StringUtils.isNotBlank(release.getDownloadUrl())) {
-          boolean forceDownload = release.equals(plugin.getDevRelease());
-          File jar = downloader.download(release.getDownloadUrl(), forceDownload);
-          if (jar != null && jar.exists()) {
-            updateReleaseRequirePluginsParentPropertiesAndDisplayVersion(pluginReferential, jar, release);
-            masterJar = jar;
-          } else {
-            throw new IllegalStateException("Plugin " + plugin.getKey() + " can't be downloaded at: " + release.getDownloadUrl());
-          }
-        } else {
-          log.warn("Ignored because of missing downloadUrl: plugin " + plugin.getKey() + ", version " + release.getVersion());
-        }
+        logsByRelease.put(release, new BufferedLog(log));
       }
-      mergeFromManifest(plugin, masterJar);
     }
+
+    ManifestCache manifests = new ManifestCache(new File(configuration.getCacheDir(), MANIFEST_INDEX));
+    int downloadParallelism = configuration.getDownloadParallelism();
+    ReleasePipeline pipeline = new ReleasePipeline(downloadParallelism, Math.min(downloadParallelism, Runtime.getRuntime().availableProcessors()), 2 * downloadParallelism);
+    try {
+      pipeline.run(pluginReferential.getPlugins(),
+        release -> download(downloader, release, logsByRelease.get(release)),
+        manifests::get,
+        (plugin, releaseFiles) -> merge(pluginReferential, plugin, releaseFiles, logsByRelease));
+    } catch (RuntimeException e) {
+      logsByRelease.values().forEach(BufferedLog::flush);
+      throw e;
+    }
+    saveManifestIndex(manifests);
   }
 
-  private static void mergeFromManifest(Plugin plugin, @Nullable File masterJar) throws IOException {
-    // the last release is the master version for loading metadata included in manifest
-    if (masterJar != null) {
-      PluginManifest manifest = new PluginManifest(masterJar);
-      if (!StringUtils.equals(plugin.getKey(), manifest.getKey())) {
-        throw new IllegalStateException(
-          "Plugin " + masterJar.getName() + " is declared with key '" + manifest.getKey() + "' in its MANIFEST, but with key '" + plugin.getKey() + "' in the update center");
+  @CheckForNull
+  private static File download(HttpDownloader downloader, Release release, Log releaseLog) throws IOException, URISyntaxException {
+    if (StringUtils.isBlank(release.getDownloadUrl())) {
+      return null;
+    }
+    boolean forceDownload = release.equals(release.getArtifact().getDevRelease());
+    File jar = downloader.download(release.getDownloadUrl(), forceDownload, releaseLog);
+    if (jar == null || !jar.exists()) {
+      throw new IllegalStateException("Plugin " + release.getKey() + " can't be downloaded at: " + release.getDownloadUrl());
+    }
+    return jar;
+  }
+
+  private void merge(PluginReferential pluginReferential, Plugin plugin, List<ReleasePipeline.ReleaseFile> releaseFiles, Map<Release, BufferedLog> logsByRelease) {
+    log.info("Load plugin: " + plugin.getKey());
+
+    Release masterRelease = null;
+    PluginManifest masterManifest = null;
+    for (ReleasePipeline.ReleaseFile releaseFile : releaseFiles) {
+      Release release = releaseFile.getRelease();
+      logsByRelease.get(release).flush();
+      PluginManifest manifest = releaseFile.getManifest();
+      if (manifest != null) {
+        updateReleaseRequirePluginsParentPropertiesAndDisplayVersion(pluginReferential, manifest, release);
+        masterRelease = release;
+        masterManifest = manifest;
+      } else {
+        log.warn("Ignored because of missing downloadUrl: plugin " + plugin.getKey() + ", version " + release.getVersion());
       }
-      plugin.merge(manifest);
+    }
+    if (masterRelease != null) {
+      mergeFromManifest(plugin, masterRelease, masterManifest);
     }
   }
 
-  private static void updateReleaseRequirePluginsParentPropertiesAndDisplayVersion(PluginReferential pluginReferential, File jar, Release release) throws IOException {
-    PluginManifest releaseManifest = new PluginManifest(jar);
+  private void saveManifestIndex(ManifestCache manifests) {
+    try {
+      manifests.save();
+    } catch (IOException e) {
+      log.warn("Fail to save the index of plugin manifests", e);
+    }
+  }
+
+  /**
+   * @param masterRelease the last release, which is the master version for loading metadata included in manifest
+   */
+  private static void mergeFromManifest(Plugin plugin, Release masterRelease, PluginManifest manifest) {
+    if (!StringUtils.equals(plugin.getKey(), manifest.getKey())) {
+      throw new IllegalStateException(
+        "Plugin " + masterRelease.getFilename() + " is declared with key '" + manifest.getKey() + "' in its MANIFEST, but with key '" + plugin.getKey() + "' in the update center");
+    }
+    plugin.merge(manifest);
+  }
+
+  private static void updateReleaseRequirePluginsParentPropertiesAndDisplayVersion(PluginReferential pluginReferential, PluginManifest releaseManifest,
+    Release release) {
     if (releaseManifest.getRequirePlugins() != null) {
       for (String requirePlugin : releaseManifest.getRequirePlugins()) {
         String[] split = requirePlugin.split(":");
@@ -112,6 +165,11 @@ class Generator {
   private void generateMetadata(UpdateCenter center) {
     log.info("Generate output: " + configuration.getOutputFile());
     UpdateCenterSerializer.toProperties(center, configuration.getOutputFile());
+    try {
+      new OutputFiles(configuration.getOutputCompressors()).writeCompressedFiles(configuration.getOutputFile());
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to compress " + configuration.getOutputFile(), e);
+    }
   }
 
   private void generateHtmlHeader(UpdateCenter center) throws IOException {
@@ -121,8 +179,10 @@ class Generator {
     } catch (IOException e) {
       throw new IllegalStateException("Fail to create the working directory: " + htmlOutputDir.getAbsolutePath(), e);
     }
-    PluginHeaders pluginHeaders = new PluginHeaders(center, htmlOutputDir, log);
+    OutputFiles output = new OutputFiles(configuration.getOutputCompressors());
+    PluginHeaders pluginHeaders = new PluginHeaders(center, htmlOutputDir, log, output, Runtime.getRuntime().availableProcessors());
     pluginHeaders.generateHtml();
+    output.writeChangedFiles(htmlOutputDir);
   }
 
 }
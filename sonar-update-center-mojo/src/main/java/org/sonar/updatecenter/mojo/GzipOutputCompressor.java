@@ -0,0 +1,54 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Files are compressed once but served many times, so the best compression level is used. The header of
+ * the gzip stream does not contain any timestamp, so the same content is always compressed to the same bytes.
+ */
+class GzipOutputCompressor implements OutputCompressor {
+
+  @Override
+  public String getExtension() {
+    return ".gz";
+  }
+
+  @Override
+  public byte[] compress(byte[] content) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4 + 64);
+    try (OutputStream output = new BestGzipOutputStream(bytes)) {
+      output.write(content);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static class BestGzipOutputStream extends GZIPOutputStream {
+    BestGzipOutputStream(OutputStream output) throws IOException {
+      super(output);
+      def.setLevel(Deflater.BEST_COMPRESSION);
+    }
+  }
+}
@@ -19,60 +19,541 @@
  */
 package org.sonar.updatecenter.mojo;
 
-import com.github.kevinsawicki.http.HttpRequest;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang.StringUtils;
-import org.apache.maven.plugin.logging.Log;
-
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import com.github.kevinsawicki.http.HttpRequest;
+import com.github.kevinsawicki.http.HttpRequest.HttpRequestException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.sonar.updatecenter.mojo.ContentAddressedCache.PartFile;
 
+/**
+ * Downloads files to the output directory. It can be shared by concurrent threads: the number of simultaneous
+ * connections to a given host is bounded and a given URL is downloaded by a single thread at a time.
+ * <p/>
+ * Downloaded files are verified against the ".sha256" or ".sha1" files published beside them, if any, then
+ * stored in a {@link ContentAddressedCache} and hard-linked (or copied when links are not supported) to the output
+ * directory, under the last segment of their URL. The file of the output directory is only a publication: two URLs
+ * with the same filename share it, so {@link #download(String, boolean)} returns the file of the URL in the cache,
+ * which can't be replaced by the download of another URL. Files copied to the output directory beforehand are
+ * added to the cache, unless they are the download of another URL.
+ * <p/>
+ * ETag and Last-Modified headers of HTTP downloads are recorded in the cache, so that forced downloads of unchanged
+ * files only cost a conditional request answered by 304 Not Modified.
+ * <p/>
+ * Failed HTTP transfers are retried. The bytes already received are kept in a part file of the cache, so that
+ * following attempts, even by another execution, only request the remaining bytes.
+ */
 class HttpDownloader {
 
+  /**
+   * How files of "file:" URLs, for example a local mirror, are made available in the output directory
+   */
+  enum LocalFileMode {
+    /**
+     * Copied to the cache then linked to the output directory, like downloaded files
+     */
+    COPY,
+    /**
+     * Hard-linked to the output directory, or copied by the kernel if source is on another file system. The cache
+     * is not used.
+     */
+    LINK,
+    /**
+     * Referenced in place by a symbolic link in the output directory. The cache is not used.
+     */
+    SYMLINK
+  }
+
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+  private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
   private final File outputDir;
+  private final ContentAddressedCache cache;
   private final Log log;
+  private final int maxConnectionsPerHost;
+  private final Map<String, Semaphore> connectionsByHost = new ConcurrentHashMap<>();
+  private final Map<String, Object> locksByUrl = new ConcurrentHashMap<>();
+  private final Map<String, Object> locksByFilename = new ConcurrentHashMap<>();
+  private final Map<String, String> urlsByFilename = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> missingChecksumsByHost = new ConcurrentHashMap<>();
+  private LocalFileMode localFileMode = LocalFileMode.COPY;
+  private int maxAttempts = 4;
+  private long initialBackoffMillis = 1_000L;
 
-  public HttpDownloader(File outputDir, Log log) {
+  public HttpDownloader(File outputDir, File cacheDir, Log log, int maxConnectionsPerHost) {
+    if (maxConnectionsPerHost < 1) {
+      throw new IllegalArgumentException("Maximum number of connections per host must be strictly positive: " + maxConnectionsPerHost);
+    }
     this.outputDir = outputDir;
+    this.cache = new ContentAddressedCache(cacheDir);
+    // temporary files older than any download are left by interrupted executions
+    this.cache.deleteStaleTempFiles(TimeUnit.DAYS.toMillis(1));
     this.log = log;
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+  }
+
+  /**
+   * Network and server errors are retried until the given number of attempts, the delay between attempts starting
+   * at the given value and doubling each time
+   */
+  HttpDownloader setRetries(int maxAttempts, long initialBackoffMillis) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("Maximum number of attempts must be strictly positive: " + maxAttempts);
+    }
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMillis = initialBackoffMillis;
+    return this;
+  }
+
+  HttpDownloader setLocalFileMode(LocalFileMode localFileMode) {
+    this.localFileMode = localFileMode;
+    return this;
   }
 
   public File download(String url, boolean force) throws IOException, URISyntaxException {
+    return download(url, force, log);
+  }
+
+  /**
+   * Same as {@link #download(String, boolean)} but messages are logged to the given log
+   *
+   * @return the file of the URL, which is a blob of the cache, or the local file itself in modes
+   * {@link LocalFileMode#LINK} and {@link LocalFileMode#SYMLINK}
+   */
+  public File download(String url, boolean force, Log log) throws IOException, URISyntaxException {
     FileUtils.forceMkdir(outputDir);
 
-    String filename = StringUtils.substringAfterLast(url, "/");
-    File output = new File(outputDir, filename);
-    if (force || !output.exists() || output.length() <= 0) {
-      downloadFile(new URL(url), output);
-    } else {
-      log.info("File found in local cache: " + url);
+    URL fileURL = new URL(url);
+    File output = new File(outputDir, StringUtils.substringAfterLast(url, "/"));
+    File file;
+    synchronized (locksByUrl.computeIfAbsent(url, u -> new Object())) {
+      if (isLocal(fileURL) && localFileMode != LocalFileMode.COPY) {
+        file = new File(fileURL.toURI());
+        if (force || !isPublished(file, output)) {
+          verifyLocalFile(fileURL, file, log);
+        }
+      } else {
+        file = fetch(fileURL, output, force, log);
+      }
     }
-    return output;
+    publish(url, file, output, log);
+    return file;
   }
 
-  File downloadFile(URL fileURL, File toFile) {
-    log.info("Download " + fileURL + " in " + toFile);
-    try {
-      if ("file".equals(fileURL.getProtocol())) {
-        File src = new File(fileURL.toURI());
-        FileUtils.copyFile(src, toFile);
+  /**
+   * @return the blob of the URL, downloaded if not in cache or if forced
+   */
+  private File fetch(URL fileURL, File output, boolean force, Log log) throws IOException {
+    String url = fileURL.toString();
+    File blob = cache.find(url);
+    if (!force && blob == null) {
+      blob = addCopiedFile(url, output);
+    }
+    if (!force && blob != null) {
+      log.info("File found in cache: " + url);
+      return blob;
+    }
+    return downloadFile(fileURL, blob, log);
+  }
+
+  /**
+   * Adds to the cache the output file that has been copied to the output directory beforehand. The output
+   * file is ignored if it is the download of another URL, in other words if its content is already in cache.
+   *
+   * @return the blob, or null if the output file is ignored
+   */
+  @CheckForNull
+  private File addCopiedFile(String url, File output) throws IOException {
+    synchronized (lock(output)) {
+      String publisher = urlsByFilename.get(output.getName());
+      if (!output.isFile() || output.length() == 0 || (publisher != null && !publisher.equals(url))) {
+        return null;
+      }
+      String sha256 = Digests.digest(output, Digests.SHA256)[0];
+      if (cache.contains(sha256)) {
+        return null;
+      }
+      File tempFile = cache.createTempFile();
+      try {
+        Files.copy(output.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        return cache.add(url, tempFile, sha256);
+      } finally {
+        FileUtils.deleteQuietly(tempFile);
+      }
+    }
+  }
+
+  /**
+   * Links the file of the URL to the output directory, unless it is already there
+   */
+  private void publish(String url, File file, File output, Log log) throws IOException {
+    synchronized (lock(output)) {
+      String previous = urlsByFilename.put(output.getName(), url);
+      if (previous != null && !previous.equals(url)) {
+        log.warn("File " + output + " downloaded from " + previous + " is replaced by the file of " + url);
+      }
+      if (isPublished(file, output)) {
+        return;
+      }
+      if (localFileMode == LocalFileMode.SYMLINK && isLocal(new URL(url))) {
+        Files.deleteIfExists(output.toPath());
+        Files.createSymbolicLink(output.toPath(), file.getAbsoluteFile().toPath());
       } else {
-        HttpRequest request = HttpRequest.get(fileURL).followRedirects(true);
-        if (fileURL.getUserInfo() != null) {
-          request.header("Authorization", "Basic " + com.github.kevinsawicki.http.HttpRequest.Base64.encode(fileURL.getUserInfo()));
-        }
+        link(file, output);
+      }
+    }
+  }
+
+  /**
+   * Files are copied instead of linked when they are on another file system, see {@link #link(File, File)}.
+   *
+   * @return true if the output file is a link to the file of the URL, or a copy with the same size and
+   * modification time, or a copy of the blob with the same digest
+   */
+  private boolean isPublished(File file, File output) throws IOException {
+    if (!output.exists()) {
+      return false;
+    }
+    if (Files.isSameFile(output.toPath(), file.toPath())) {
+      return true;
+    }
+    if (Files.isSymbolicLink(output.toPath())) {
+      return false;
+    }
+    if (output.length() == file.length() && output.lastModified() == file.lastModified()) {
+      return true;
+    }
+    return cache.isBlob(file) && ContentAddressedCache.hasContent(output, file);
+  }
+
+  private Object lock(File output) {
+    return locksByFilename.computeIfAbsent(output.getName(), f -> new Object());
+  }
 
-        if (!request.receive(toFile).ok()) {
-          throw new IllegalStateException(request.message());
+  private static boolean isLocal(URL url) {
+    return "file".equals(url.getProtocol());
+  }
+
+  /**
+   * @param blob the blob of the last download of the URL, if any, in which case a conditional request is sent
+   * @return the blob of the new version, or the given blob if the file has not been modified
+   */
+  private File downloadFile(URL fileURL, @Nullable File blob, Log log) {
+    log.info("Download " + fileURL);
+    String url = fileURL.toString();
+    try {
+      if (isLocal(fileURL)) {
+        return copyLocalFile(fileURL, log);
+      }
+      File metadataFile = cache.getMetadataFile(url);
+      DownloadMetadata lastMetadata = blob != null ? DownloadMetadata.load(metadataFile) : null;
+      try (PartFile part = cache.openPart(url)) {
+        DownloadMetadata metadata = receive(fileURL, lastMetadata != null && lastMetadata.isValidFor(url, blob) ? lastMetadata : null, part, log);
+        if (metadata == null) {
+          log.info("File not modified since last download: " + fileURL);
+          return blob;
         }
+        String sha256;
+        try {
+          sha256 = verify(fileURL, part.getFile(), true, log);
+        } catch (ChecksumMismatchException e) {
+          // complete but corrupted, so not worth resuming
+          FileUtils.deleteQuietly(part.getFile());
+          throw e;
+        }
+        File newBlob = cache.add(url, part.getFile(), sha256);
+        metadata.save(metadataFile);
+        return newBlob;
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while downloading " + fileURL, e);
     } catch (Exception e) {
-      FileUtils.deleteQuietly(toFile);
-      throw new IllegalStateException("Fail to download " + fileURL + " to " + toFile, e);
+      throw new IllegalStateException("Fail to download " + fileURL, e);
+    }
+  }
+
+  private void verifyLocalFile(URL fileURL, File file, Log log) {
+    try {
+      verify(fileURL, file, false, log);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while verifying " + fileURL, e);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to verify " + fileURL, e);
+    }
+  }
+
+  private File copyLocalFile(URL fileURL, Log log) throws IOException, URISyntaxException, InterruptedException {
+    File tempFile = cache.createTempFile();
+    try {
+      FileUtils.copyFile(new File(fileURL.toURI()), tempFile);
+      return cache.add(fileURL.toString(), tempFile, verify(fileURL, tempFile, true, log));
+    } finally {
+      FileUtils.deleteQuietly(tempFile);
+    }
+  }
+
+  /**
+   * Calls {@link #receiveOnce(URL, DownloadMetadata, PartFile)} until it succeeds, waiting between attempts with an
+   * exponential backoff. Only network errors and server errors are retried. The connection to the host is released
+   * while waiting.
+   */
+  @CheckForNull
+  private DownloadMetadata receive(URL fileURL, @Nullable DownloadMetadata lastMetadata, PartFile part, Log log) throws InterruptedException {
+    Semaphore connections = connections(fileURL);
+    long backoff = initialBackoffMillis;
+    for (int attempt = 1;; attempt++) {
+      connections.acquire();
+      try {
+        return receiveOnce(fileURL, lastMetadata, part);
+      } catch (HttpRequestException | TransientDownloadException e) {
+        if (attempt >= maxAttempts) {
+          throw e;
+        }
+        log.warn("Fail to download " + fileURL + " (attempt " + attempt + "/" + maxAttempts + "), retry in " + backoff + "ms: " + e.getMessage());
+      } finally {
+        connections.release();
+      }
+      Thread.sleep(backoff);
+      backoff *= 2;
+    }
+  }
+
+  private Semaphore connections(URL url) {
+    return connectionsByHost.computeIfAbsent(url.getHost(), h -> new Semaphore(maxConnectionsPerHost));
+  }
+
+  /**
+   * Downloads to the part file, with a conditional request if the metadata of the last download are known. If the
+   * part file contains the beginning of the same version of the remote file, only the remaining bytes are requested.
+   * The download restarts from the beginning if the server answers with another range.
+   *
+   * @param lastMetadata the metadata of the blob in cache, if any
+   * @return the metadata of the new version, or null if the file has not been modified
+   */
+  @CheckForNull
+  private DownloadMetadata receiveOnce(URL fileURL, @Nullable DownloadMetadata lastMetadata, PartFile part) {
+    String url = fileURL.toString();
+    HttpRequest request = newRequest(fileURL);
+    boolean conditional = lastMetadata != null && lastMetadata.hasValidators();
+    if (conditional) {
+      if (lastMetadata.getEtag() != null) {
+        request.ifNoneMatch(lastMetadata.getEtag());
+      }
+      if (lastMetadata.getLastModified() != null) {
+        request.header("If-Modified-Since", lastMetadata.getLastModified());
+      }
+    }
+
+    File partFile = part.getFile();
+    DownloadMetadata partMetadata = part.isResumable() ? DownloadMetadata.load(part.getValidatorsFile()) : null;
+    String ifRange = partMetadata != null ? partMetadata.getIfRangeValidator() : null;
+    boolean resume = ifRange != null && partMetadata.getUrl().equals(url)
+      && partFile.length() > 0 && partFile.length() < partMetadata.getContentLength();
+    if (resume) {
+      request.header("Range", "bytes=" + partFile.length() + "-");
+      request.header("If-Range", ifRange);
+    }
+
+    int code = request.code();
+    if (conditional && code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+      FileUtils.deleteQuietly(partFile);
+      return null;
+    }
+    if (resume && code == HttpURLConnection.HTTP_PARTIAL) {
+      if (!isExpectedRange(request.header("Content-Range"), partFile.length(), partMetadata.getContentLength())) {
+        request.disconnect();
+        FileUtils.deleteQuietly(partFile);
+        return receiveOnce(fileURL, lastMetadata, part);
+      }
+      try (OutputStream output = new FileOutputStream(partFile, true)) {
+        request.receive(output);
+      } catch (IOException e) {
+        throw new TransientDownloadException(e.getMessage());
+      }
+      checkReceived(partFile, partMetadata.getContentLength());
+      return new DownloadMetadata(url, partMetadata.getEtag(), partMetadata.getLastModified(), partFile.length());
+    }
+    if (code >= HttpURLConnection.HTTP_INTERNAL_ERROR || code == HTTP_RANGE_NOT_SATISFIABLE) {
+      FileUtils.deleteQuietly(partFile);
+      throw new TransientDownloadException(code + " " + request.message());
+    }
+    if (!request.ok()) {
+      throw new IllegalStateException(request.message());
+    }
+
+    DownloadMetadata newMetadata = new DownloadMetadata(url, request.eTag(), request.header(HttpRequest.HEADER_LAST_MODIFIED), request.contentLength());
+    if (part.isResumable()) {
+      try {
+        newMetadata.save(part.getValidatorsFile());
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to write " + part.getValidatorsFile(), e);
+      }
+    }
+    request.receive(partFile);
+    checkReceived(partFile, newMetadata.getContentLength());
+    return new DownloadMetadata(url, newMetadata.getEtag(), newMetadata.getLastModified(), partFile.length());
+  }
+
+  /**
+   * @param contentRange the header "Content-Range: bytes first-last/length" of a partial response
+   */
+  static boolean isExpectedRange(@Nullable String contentRange, long first, long length) {
+    Matcher matcher = CONTENT_RANGE.matcher(StringUtils.defaultString(contentRange).trim());
+    return matcher.matches()
+      && Long.parseLong(matcher.group(1)) == first
+      && Long.parseLong(matcher.group(2)) == length - 1
+      && ("*".equals(matcher.group(3)) || Long.parseLong(matcher.group(3)) == length);
+  }
+
+  /**
+   * The connection may be closed before the end of the content without any error
+   */
+  private static void checkReceived(File partFile, long expectedLength) {
+    if (expectedLength >= 0 && partFile.length() < expectedLength) {
+      throw new TransientDownloadException("Connection closed after " + partFile.length() + " of " + expectedLength + " bytes");
+    }
+  }
+
+  /**
+   * The checksum files are requested first, so that the file is read only if one of them exists or if its SHA-256
+   * is required. Both digests are then computed in a single pass. A checksum file that can't be fetched, for
+   * example because of a network error, is skipped with a warning. Only a mismatch fails the verification.
+   *
+   * @return the SHA-256 of the file, or null if not required
+   */
+  @CheckForNull
+  private String verify(URL fileURL, File file, boolean sha256Required, Log log) throws IOException, InterruptedException {
+    String[] algorithms = {Digests.SHA256, Digests.SHA1};
+    String[] extensions = {".sha256", ".sha1"};
+    for (int i = 0; i < extensions.length; i++) {
+      URL checksumURL = new URL(fileURL.toString() + extensions[i]);
+      String expected;
+      try {
+        expected = fetchChecksum(checksumURL, extensions[i]);
+      } catch (IOException | HttpRequestException e) {
+        log.warn("Fail to fetch " + checksumURL + ", " + fileURL + " is not verified against it: " + e.getMessage());
+        continue;
+      }
+      if (expected != null) {
+        String[] digests = sha256Required && i > 0 ? Digests.digest(file, algorithms[i], Digests.SHA256) : Digests.digest(file, algorithms[i]);
+        if (!expected.equalsIgnoreCase(digests[0])) {
+          throw new ChecksumMismatchException("Checksum of " + fileURL + " is " + digests[0] + " but " + checksumURL + " declares " + expected);
+        }
+        log.debug("Checksum verified against " + checksumURL);
+        return sha256Required ? digests[digests.length - 1] : null;
+      }
+    }
+    return sha256Required ? Digests.digest(file, Digests.SHA256)[0] : null;
+  }
+
+  /**
+   * Hosts that do not publish a kind of checksum file are not requested for it again, so that repositories
+   * without checksum files do not cost two requests per download.
+   *
+   * @return the first token of the checksum file, or null if it does not exist
+   */
+  @CheckForNull
+  private String fetchChecksum(URL checksumURL, String extension) throws IOException, InterruptedException {
+    String content;
+    if (isLocal(checksumURL)) {
+      File file = FileUtils.toFile(checksumURL);
+      content = file.isFile() ? FileUtils.readFileToString(file, StandardCharsets.UTF_8) : null;
+    } else {
+      Set<String> missingExtensions = missingChecksumsByHost.computeIfAbsent(checksumURL.getHost(), h -> ConcurrentHashMap.newKeySet());
+      if (missingExtensions.contains(extension)) {
+        return null;
+      }
+      Semaphore connections = connections(checksumURL);
+      connections.acquire();
+      try {
+        HttpRequest request = newRequest(checksumURL);
+        int code = request.code();
+        if (code >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+          throw new IOException(code + " " + request.message());
+        }
+        if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+          missingExtensions.add(extension);
+        }
+        content = request.ok() ? request.body() : null;
+      } finally {
+        connections.release();
+      }
+    }
+    String[] tokens = StringUtils.split(StringUtils.defaultString(content));
+    return tokens.length > 0 ? tokens[0] : null;
+  }
+
+  private static HttpRequest newRequest(URL url) {
+    HttpRequest request = HttpRequest.get(url).followRedirects(true);
+    if (url.getUserInfo() != null) {
+      request.header("Authorization", "Basic " + com.github.kevinsawicki.http.HttpRequest.Base64.encode(url.getUserInfo()));
+    }
+    return request;
+  }
+
+  /**
+   * The output file is replaced, never written in place, as it may be a link to a blob of the cache.
+   * When source and output are not on the same file system, the file is copied with
+   * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which lets the kernel copy
+   * (or even clone, depending on the file system) the data without going through the JVM. The copy keeps the
+   * modification time of the source, so that it is recognized by the next executions.
+   */
+  private static void link(File src, File output) throws IOException {
+    Files.deleteIfExists(output.toPath());
+    try {
+      Files.createLink(output.toPath(), src.toPath());
+    } catch (IOException | UnsupportedOperationException e) {
+      try (FileChannel in = FileChannel.open(src.toPath(), StandardOpenOption.READ);
+        FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        long size = in.size();
+        long position = 0;
+        while (position < size) {
+          position += in.transferTo(position, size - position, out);
+        }
+      }
+      Files.setLastModifiedTime(output.toPath(), Files.getLastModifiedTime(src.toPath()));
+    }
+  }
+
+  /**
+   * Downloaded content that does not match its published checksum
+   */
+  private static class ChecksumMismatchException extends IllegalStateException {
+    ChecksumMismatchException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Failure that may not happen again if the request is retried
+   */
+  private static class TransientDownloadException extends IllegalStateException {
+    TransientDownloadException(String message) {
+      super(message);
     }
-    return toFile;
   }
 
 }
@@ -0,0 +1,186 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FileUtils;
+import org.sonar.updatecenter.common.ManifestReader;
+import org.sonar.updatecenter.common.PluginManifest;
+
+/**
+ * Manifests of the plugin files, each file being opened only once. Files are identified by their
+ * file system key (inode), size and modification time, so that the hard links of the same cached
+ * blob share the same entry and a modified file is read again.
+ * <p/>
+ * The main attributes of the manifests can be persisted in an index file, keyed by path, size and modification
+ * time, so that the next executions do not open the files that did not change.
+ */
+class ManifestCache {
+
+  private static final Gson GSON = new Gson();
+
+  private final File indexFile;
+  private final Map<String, PluginManifest> manifestsByFile = new ConcurrentHashMap<>();
+  private final Map<String, IndexEntry> index = new ConcurrentHashMap<>();
+
+  ManifestCache() {
+    this(null);
+  }
+
+  ManifestCache(@Nullable File indexFile) {
+    this.indexFile = indexFile;
+    if (indexFile != null) {
+      index.putAll(loadIndex(indexFile));
+    }
+  }
+
+  PluginManifest get(File jar) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(jar.toPath(), BasicFileAttributes.class);
+    String key = key(jar, attributes);
+    PluginManifest manifest = manifestsByFile.get(key);
+    if (manifest == null) {
+      manifest = load(jar, attributes);
+      PluginManifest concurrent = manifestsByFile.putIfAbsent(key, manifest);
+      if (concurrent != null) {
+        manifest = concurrent;
+      }
+    }
+    return manifest;
+  }
+
+  private PluginManifest load(File jar, BasicFileAttributes attributes) {
+    String path = jar.getAbsolutePath();
+    long lastModified = attributes.lastModifiedTime().toMillis();
+    IndexEntry entry = index.get(path);
+    if (entry == null || entry.size != attributes.size() || entry.lastModified != lastModified) {
+      entry = new IndexEntry(attributes.size(), lastModified, readMainAttributes(jar));
+      index.put(path, entry);
+    }
+    if (entry.attributes == null) {
+      return new PluginManifest();
+    }
+    Manifest manifest = new Manifest();
+    entry.attributes.forEach((name, value) -> manifest.getMainAttributes().putValue(name, value));
+    return new PluginManifest(manifest);
+  }
+
+  /**
+   * @return null if the file has no manifest
+   */
+  @CheckForNull
+  private static Map<String, String> readMainAttributes(File file) {
+    try {
+      Manifest manifest = ManifestReader.read(file);
+      if (manifest == null) {
+        return null;
+      }
+      Map<String, String> result = new TreeMap<>();
+      for (Map.Entry<Object, Object> attribute : manifest.getMainAttributes().entrySet()) {
+        result.put(((Attributes.Name) attribute.getKey()).toString(), (String) attribute.getValue());
+      }
+      return result;
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to read plugin manifest from jar : " + file.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Writes the index file, without the entries of the files that do not exist anymore
+   */
+  void save() throws IOException {
+    if (indexFile == null) {
+      return;
+    }
+    Map<String, IndexEntry> entries = new TreeMap<>(index);
+    entries.keySet().removeIf(path -> !new File(path).isFile());
+    FileUtils.forceMkdir(indexFile.getParentFile());
+    // the index may be shared by concurrent executions
+    File tempFile = Files.createTempFile(indexFile.getParentFile().toPath(), indexFile.getName(), ".tmp").toFile();
+    try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+      GSON.toJson(entries, writer);
+    }
+    Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * The index is only an optimization, so an unreadable file is considered as empty and invalid entries
+   * are ignored. The files of these entries are read again.
+   */
+  private static Map<String, IndexEntry> loadIndex(File indexFile) {
+    Map<String, IndexEntry> result = new TreeMap<>();
+    if (indexFile.isFile()) {
+      try (Reader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+        Map<String, IndexEntry> entries = GSON.fromJson(reader, new TypeToken<Map<String, IndexEntry>>() {
+        }.getType());
+        if (entries != null) {
+          entries.forEach((path, entry) -> {
+            if (path != null && entry != null && entry.isValid()) {
+              result.put(path, entry);
+            }
+          });
+        }
+      } catch (IOException | RuntimeException e) {
+        // ignored, the index is rebuilt
+        result.clear();
+      }
+    }
+    return result;
+  }
+
+  private static String key(File file, BasicFileAttributes attributes) throws IOException {
+    Object fileKey = attributes.fileKey();
+    return (fileKey != null ? fileKey.toString() : file.getCanonicalPath()) + ":" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+  }
+
+  private static class IndexEntry {
+    private long size;
+    private long lastModified;
+    private Map<String, String> attributes;
+
+    IndexEntry(long size, long lastModified, @Nullable Map<String, String> attributes) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.attributes = attributes;
+    }
+
+    /**
+     * @return false if an attribute has no name or no value, as it can't be put in a manifest
+     */
+    boolean isValid() {
+      return attributes == null || attributes.entrySet().stream().allMatch(attribute -> attribute.getKey() != null && attribute.getValue() != null);
+    }
+  }
+}
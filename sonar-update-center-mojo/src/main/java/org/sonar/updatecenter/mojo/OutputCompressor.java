@@ -0,0 +1,54 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Compresses generated text files, so that they can be served precompressed instead of being compressed
+ * on the fly by the web server or the CDN. The compressed copy of a file has the same name followed
+ * by {@link #getExtension()}.
+ * <p/>
+ * Gzip is always available. Other formats, for example brotli, can be provided by implementations declared in
+ * {@code META-INF/services/org.sonar.updatecenter.mojo.OutputCompressor} of a dependency of the plugin.
+ * Implementations must be thread-safe.
+ */
+public interface OutputCompressor {
+
+  /**
+   * For example ".gz"
+   */
+  String getExtension();
+
+  byte[] compress(byte[] content) throws IOException;
+
+  /**
+   * Gzip, followed by the implementations available in the classpath
+   */
+  static List<OutputCompressor> loadAll() {
+    List<OutputCompressor> compressors = new ArrayList<>();
+    compressors.add(new GzipOutputCompressor());
+    ServiceLoader.load(OutputCompressor.class, OutputCompressor.class.getClassLoader()).forEach(compressors::add);
+    return compressors;
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Writes generated files only when their content changes, so that timestamps of unchanged files are kept
+ * and the publishing step can upload only the files listed in {@link #CHANGED_FILES}.
+ * <p/>
+ * Content is compared with the SHA-256 of the existing file. Changed files are written to a temporary file
+ * of the same directory, then atomically moved, so that readers never see a partially written file.
+ * <p/>
+ * When compressors are configured, a compressed copy of each file is written next to it. Compression
+ * runs in background while the plain file is written. This class is thread-safe.
+ */
+public class OutputFiles {
+
+  public static final String CHANGED_FILES = "changed-files.txt";
+
+  private final List<OutputCompressor> compressors;
+  private final Set<File> changedFiles = new ConcurrentSkipListSet<>();
+
+  public OutputFiles() {
+    this(Collections.emptyList());
+  }
+
+  public OutputFiles(List<OutputCompressor> compressors) {
+    this.compressors = compressors;
+  }
+
+  /**
+   * @return true if the file has been created or modified, false if it already had the same content
+   */
+  public boolean write(File file, byte[] content) throws IOException {
+    boolean changed = !hasContent(file, content);
+    // compressed copies of an unchanged file are up-to-date, unless they are missing
+    List<OutputCompressor> outdatedCompressors = changed ? compressors
+      : compressors.stream().filter(compressor -> !compressedFile(file, compressor).isFile()).collect(Collectors.toList());
+    List<CompletableFuture<byte[]>> compressedContents = compressInBackground(outdatedCompressors, content);
+    if (changed) {
+      replace(file, content);
+    }
+    writeCompressedFiles(file, outdatedCompressors, compressedContents);
+    return changed;
+  }
+
+  /**
+   * Writes the compressed copies of a file written by other means, for example the properties of the update center
+   */
+  public void writeCompressedFiles(File file) throws IOException {
+    byte[] content = Files.readAllBytes(file.toPath());
+    writeCompressedFiles(file, compressors, compressInBackground(compressors, content));
+  }
+
+  private void writeCompressedFiles(File file, List<OutputCompressor> compressors, List<CompletableFuture<byte[]>> compressedContents) throws IOException {
+    for (int i = 0; i < compressors.size(); i++) {
+      File compressedFile = compressedFile(file, compressors.get(i));
+      byte[] compressedContent = await(compressedContents.get(i));
+      if (!hasContent(compressedFile, compressedContent)) {
+        replace(compressedFile, compressedContent);
+      }
+    }
+  }
+
+  private static List<CompletableFuture<byte[]>> compressInBackground(List<OutputCompressor> compressors, byte[] content) {
+    return compressors.stream()
+      .map(compressor -> CompletableFuture.supplyAsync(() -> {
+        try {
+          return compressor.compress(content);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }))
+      .collect(Collectors.toList());
+  }
+
+  private static byte[] await(CompletableFuture<byte[]> future) throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw new IllegalStateException("Fail to compress file", e.getCause());
+    }
+  }
+
+  /**
+   * @return the name of a file written by {@link #write(File, byte[])}, followed by the names of its compressed copies
+   */
+  public List<String> fileNames(String fileName) {
+    List<String> fileNames = new ArrayList<>();
+    fileNames.add(fileName);
+    for (OutputCompressor compressor : compressors) {
+      fileNames.add(fileName + compressor.getExtension());
+    }
+    return fileNames;
+  }
+
+  private static File compressedFile(File file, OutputCompressor compressor) {
+    return new File(file.getParentFile(), file.getName() + compressor.getExtension());
+  }
+
+  private static boolean hasContent(File file, byte[] content) throws IOException {
+    return file.isFile() && file.length() == content.length
+      && Digests.digest(file, Digests.SHA256)[0].equals(Digests.sha256(content));
+  }
+
+  private void replace(File file, byte[] content) throws IOException {
+    move(file, content);
+    changedFiles.add(file.getAbsoluteFile());
+  }
+
+  private static void move(File file, byte[] content) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    FileUtils.forceMkdir(dir);
+    Path temp = Files.createTempFile(dir.toPath(), "." + file.getName(), ".tmp");
+    try {
+      Files.write(temp, content);
+      Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Marks a file written by other means, for example a zip generated in place, as changed
+   */
+  public void markChanged(File file) {
+    changedFiles.add(file.getAbsoluteFile());
+  }
+
+  public Set<File> getChangedFiles() {
+    return changedFiles;
+  }
+
+  /**
+   * Writes the file {@link #CHANGED_FILES} of the directory. It lists the paths of the changed files of the
+   * directory, relative to the directory, one per line. The list is empty if nothing changed. Like the other
+   * files, it is written only if its content changes, but it is not listed.
+   */
+  public void writeChangedFiles(File dir) throws IOException {
+    Path dirPath = dir.getAbsoluteFile().toPath();
+    String content = changedFiles.stream()
+      .map(File::toPath)
+      .filter(path -> path.startsWith(dirPath))
+      .map(path -> dirPath.relativize(path).toString().replace(File.separatorChar, '/') + "\n")
+      .collect(Collectors.joining());
+    File file = new File(dir, CHANGED_FILES);
+    byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+    if (!hasContent(file, bytes)) {
+      move(file, bytes);
+    }
+  }
+}
@@ -21,73 +21,81 @@ package org.sonar.updatecenter.mojo;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.apache.commons.io.FileUtils;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.io.IOUtils;
 import org.apache.maven.plugin.logging.Log;
+import org.sonar.updatecenter.common.DaemonThreadFactory;
 import org.sonar.updatecenter.common.Plugin;
 import org.sonar.updatecenter.common.Release;
 import org.sonar.updatecenter.common.UpdateCenter;
+import org.sonar.updatecenter.common.Version;
 
 class PluginHeaders {
 
+  private static final String CONFLUENCE_TEMPLATE = "plugin-confluence-include-template.html.ftl";
+  private static final String SONARSOURCE_TEMPLATE = "plugin-sonarsource-include-template.html.ftl";
+  private static final String MATRIX_TEMPLATE = "matrix-template.html.ftl";
+
   private final File outputDirectory;
   private final UpdateCenter center;
   private final Log log;
+  private final OutputFiles output;
+  private final int parallelism;
 
   PluginHeaders(UpdateCenter center, File outputDirectory, Log log) {
+    this(center, outputDirectory, log, new OutputFiles(), Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param output files are written only if their content changed
+   * @param parallelism the maximum number of plugins rendered at the same time
+   */
+  PluginHeaders(UpdateCenter center, File outputDirectory, Log log, OutputFiles output, int parallelism) {
     this.outputDirectory = outputDirectory;
     this.center = center;
     this.log = log;
+    this.output = output;
+    this.parallelism = DaemonThreadFactory.checkParallelism(parallelism);
   }
 
   private void init() throws IOException {
     if (!outputDirectory.exists()) {
       throw new IllegalArgumentException("Output directory does not exist: " + outputDirectory);
     }
-    FileUtils.copyURLToFile(getClass().getResource("/style-confluence.css"), new File(outputDirectory, "style-confluence.css"));
-    FileUtils.copyURLToFile(getClass().getResource("/error.png"), new File(outputDirectory, "error.png"));
-    FileUtils.copyURLToFile(getClass().getResource("/onde-sonar-16.png"), new File(outputDirectory, "onde-sonar-16.png"));
+    copyResource("style-confluence.css");
+    copyResource("error.png");
+    copyResource("onde-sonar-16.png");
+  }
+
+  private void copyResource(String name) throws IOException {
+    output.write(new File(outputDirectory, name), IOUtils.toByteArray(getClass().getResource("/" + name)));
   }
 
   void generateHtml() throws IOException {
     init();
+    FreeMarkerUtils.precompile(CONFLUENCE_TEMPLATE, SONARSOURCE_TEMPLATE, MATRIX_TEMPLATE);
     List<Plugin> plugins = center.getUpdateCenterPluginReferential().getPlugins();
     CompatibilityMatrix matrix = new CompatibilityMatrix();
 
     // We want to keep only latest patch version. For example for 3.7, 3.7.1, 3.7.2 we keep only 3.7.2
+    List<Version> sqMajorVersions = new ArrayList<>();
     for (Release sq : center.getSonar().getMajorReleases()) {
+      sqMajorVersions.add(sq.getVersion());
       String displayVersion = sq.getVersion().getMajor() + "." + sq.getVersion().getMinor();
       Date releaseDate = sq.getDate();
       boolean isLts = center.getSonar().getLtsRelease().equals(sq);
       matrix.getSqVersions().add(new HtmlSQVersionModel(sq.getVersion().toString(), displayVersion, releaseDate, isLts));
     }
-    for (Plugin plugin : plugins) {
-      PluginHeader pluginHeader = new PluginHeader(plugin, center.getSonar());
-      Map<String, Object> dataModel = new HashMap<>();
-      dataModel.put("pluginHeader", pluginHeader);
-
-      File file = new File(outputDirectory, plugin.getKey() + "-confluence-include.html");
-      log.info("Generate confluence html include of plugin " + plugin.getKey() + " in: " + file);
-      FreeMarkerUtils.print(dataModel, file, "plugin-confluence-include-template.html.ftl");
-
-      file = new File(outputDirectory, plugin.getKey() + "-sonarsource-include.html");
-      log.info("Generate sonarsource.com include of plugin " + plugin.getKey() + " in: " + file);
-      FreeMarkerUtils.print(dataModel, file, "plugin-sonarsource-include-template.html.ftl");
-
-      CompatibilityMatrix.Plugin matrixPlugin = new CompatibilityMatrix.Plugin(plugin.getName(), plugin.getHomepageUrl(), plugin.isSupportedBySonarSource());
-      matrix.getPlugins().add(matrixPlugin);
-
-      for (Release sq : center.getSonar().getMajorReleases()) {
-        Release lastCompatible = plugin.getLastCompatible(sq.getVersion());
-        if (lastCompatible != null) {
-          matrixPlugin.getCompatibleVersionBySqVersion().put(sq.getVersion().toString(), lastCompatible.getVersion().toString());
-        }
-      }
-    }
-
+    matrix.getPlugins().addAll(renderPlugins(plugins, sqMajorVersions));
     matrix.getPlugins().sort((o1, o2) -> o1.getName().compareToIgnoreCase(o2.getName()));
 
     if (!matrix.getPlugins().isEmpty()) {
@@ -95,8 +103,69 @@ class PluginHeaders {
       Map<String, Object> dataModel = new HashMap<>();
       dataModel.put("matrix", matrix);
       log.info("Generate compatibility matrix in: " + file);
-      FreeMarkerUtils.print(dataModel, file, "matrix-template.html.ftl");
+      FreeMarkerUtils.print(dataModel, file, MATRIX_TEMPLATE, output);
+    }
+  }
+
+  /**
+   * Plugins are rendered concurrently. Logs and rows of the compatibility matrix are returned in the order of plugins.
+   */
+  private List<CompatibilityMatrix.Plugin> renderPlugins(List<Plugin> plugins, List<Version> sqMajorVersions) {
+    if (plugins.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<BufferedLog> logs = new ArrayList<>();
+    List<Future<CompatibilityMatrix.Plugin>> futures = new ArrayList<>();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, plugins.size()), new DaemonThreadFactory("html-rendering"));
+    try {
+      for (Plugin plugin : plugins) {
+        BufferedLog pluginLog = new BufferedLog(log);
+        logs.add(pluginLog);
+        futures.add(executor.submit(() -> renderPlugin(plugin, sqMajorVersions, pluginLog)));
+      }
+      List<CompatibilityMatrix.Plugin> matrixPlugins = new ArrayList<>();
+      for (int i = 0; i < futures.size(); i++) {
+        matrixPlugins.add(futures.get(i).get());
+        logs.get(i).flush();
+      }
+      return matrixPlugins;
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while generating HTML of plugins", e);
+    } catch (ExecutionException e) {
+      logs.forEach(BufferedLog::flush);
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Fail to generate HTML of plugins", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private CompatibilityMatrix.Plugin renderPlugin(Plugin plugin, List<Version> sqMajorVersions, Log pluginLog) {
+    PluginHeader pluginHeader = new PluginHeader(plugin, center.getSonar());
+    Map<String, Object> dataModel = new HashMap<>();
+    dataModel.put("pluginHeader", pluginHeader);
+
+    File file = new File(outputDirectory, plugin.getKey() + "-confluence-include.html");
+    pluginLog.info("Generate confluence html include of plugin " + plugin.getKey() + " in: " + file);
+    FreeMarkerUtils.print(dataModel, file, CONFLUENCE_TEMPLATE, output);
+
+    file = new File(outputDirectory, plugin.getKey() + "-sonarsource-include.html");
+    pluginLog.info("Generate sonarsource.com include of plugin " + plugin.getKey() + " in: " + file);
+    FreeMarkerUtils.print(dataModel, file, SONARSOURCE_TEMPLATE, output);
+
+    CompatibilityMatrix.Plugin matrixPlugin = new CompatibilityMatrix.Plugin(plugin.getName(), plugin.getHomepageUrl(), plugin.isSupportedBySonarSource());
+    Map<Version, Release> lastCompatibleBySqVersion = plugin.getLastCompatibleBySonarVersion(sqMajorVersions);
+    for (Version sqVersion : sqMajorVersions) {
+      Release lastCompatible = lastCompatibleBySqVersion.get(sqVersion);
+      if (lastCompatible != null) {
+        matrixPlugin.getCompatibleVersionBySqVersion().put(sqVersion.toString(), lastCompatible.getVersion().toString());
+      }
     }
+    return matrixPlugin;
   }
 
 }
@@ -0,0 +1,241 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.updatecenter.common.DaemonThreadFactory;
+import org.sonar.updatecenter.common.ParallelReleaseExecutor;
+import org.sonar.updatecenter.common.Plugin;
+import org.sonar.updatecenter.common.PluginManifest;
+import org.sonar.updatecenter.common.Release;
+
+/**
+ * Downloads the releases of plugins, reads their manifests and merges them in three stages that run
+ * at the same time. Stages are connected by bounded queues, so that downloads are paused when manifests
+ * are not read fast enough, and the total duration approaches the duration of the slowest stage.
+ * <p/>
+ * Releases are downloaded by a {@link ParallelReleaseExecutor}, so a release is downloaded after the
+ * releases it depends on.
+ * <p/>
+ * Downloads and reads are concurrent, but plugins are merged one after the other on the calling thread,
+ * in the order of plugins, as soon as all their releases are available.
+ */
+class ReleasePipeline {
+
+  @FunctionalInterface
+  interface Download {
+    /**
+     * @return the downloaded file, or null if the release has nothing to download
+     */
+    @CheckForNull
+    File download(Release release) throws Exception;
+  }
+
+  @FunctionalInterface
+  interface Read {
+    PluginManifest read(File file) throws Exception;
+  }
+
+  @FunctionalInterface
+  interface Merge {
+    /**
+     * @param releases all the releases of the plugin, in the same order as {@link Plugin#getAllReleases()}
+     */
+    void merge(Plugin plugin, List<ReleaseFile> releases);
+  }
+
+  static final class ReleaseFile {
+    private final Release release;
+    private final File file;
+    private final PluginManifest manifest;
+
+    private ReleaseFile(Release release, @Nullable File file, @Nullable PluginManifest manifest) {
+      this.release = release;
+      this.file = file;
+      this.manifest = manifest;
+    }
+
+    Release getRelease() {
+      return release;
+    }
+
+    @CheckForNull
+    File getFile() {
+      return file;
+    }
+
+    @CheckForNull
+    PluginManifest getManifest() {
+      return manifest;
+    }
+  }
+
+  private final int downloadParallelism;
+  private final int readParallelism;
+  private final int queueCapacity;
+
+  ReleasePipeline(int downloadParallelism, int readParallelism, int queueCapacity) {
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException("Queue capacity must be strictly positive: " + queueCapacity);
+    }
+    this.downloadParallelism = DaemonThreadFactory.checkParallelism(downloadParallelism);
+    this.readParallelism = DaemonThreadFactory.checkParallelism(readParallelism);
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * If a release fails to be downloaded or read, no more plugins are merged and an {@link IllegalStateException}
+   * is thrown. Failures of merge are propagated as-is.
+   */
+  void run(List<Plugin> plugins, Download download, Read read, Merge merge) {
+    BlockingQueue<Object> downloaded = new ArrayBlockingQueue<>(queueCapacity);
+    BlockingQueue<Object> completed = new ArrayBlockingQueue<>(queueCapacity);
+    ExecutorService downloadExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("release-download"));
+    ExecutorService readExecutor = Executors.newFixedThreadPool(readParallelism, new DaemonThreadFactory("manifest-read"));
+    try {
+      List<Release> releases = new ArrayList<>();
+      for (Plugin plugin : plugins) {
+        releases.addAll(plugin.getAllReleases());
+      }
+      downloadExecutor.execute(() -> downloadLoop(releases, downloaded, download));
+      for (int i = 0; i < readParallelism; i++) {
+        readExecutor.execute(() -> readLoop(downloaded, completed, read));
+      }
+      mergeLoop(plugins, completed, merge);
+    } finally {
+      downloadExecutor.shutdownNow();
+      readExecutor.shutdownNow();
+    }
+  }
+
+  private void downloadLoop(List<Release> releases, BlockingQueue<Object> downloaded, Download download) {
+    try {
+      new ParallelReleaseExecutor(downloadParallelism)
+        .execute(releases, release -> forward(downloaded, () -> new ReleaseFile(release, download.download(release), null), release));
+    } catch (IllegalStateException e) {
+      // failures of downloads are forwarded, so the executor fails only if the pipeline is stopped
+      // or if releases require each other
+      if (!Thread.currentThread().isInterrupted()) {
+        put(downloaded, new Failure(null, e));
+      }
+    }
+  }
+
+  private static void readLoop(BlockingQueue<Object> downloaded, BlockingQueue<Object> completed, Read read) {
+    try {
+      while (true) {
+        Object item = downloaded.take();
+        if (item instanceof Failure) {
+          completed.put(item);
+        } else {
+          ReleaseFile releaseFile = (ReleaseFile) item;
+          forward(completed, () -> releaseFile.file == null ? releaseFile
+            : new ReleaseFile(releaseFile.release, releaseFile.file, read.read(releaseFile.file)), releaseFile.release);
+        }
+      }
+    } catch (InterruptedException e) {
+      // pipeline is stopped
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void forward(BlockingQueue<Object> queue, Stage stage, Release release) {
+    Object result;
+    try {
+      result = stage.execute();
+    } catch (Exception e) {
+      result = new Failure(release, e);
+    }
+    put(queue, result);
+  }
+
+  private static void put(BlockingQueue<Object> queue, Object item) {
+    try {
+      queue.put(item);
+    } catch (InterruptedException e) {
+      // pipeline is stopped
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void mergeLoop(List<Plugin> plugins, BlockingQueue<Object> completed, Merge merge) {
+    Map<Release, ReleaseFile> pending = new HashMap<>();
+    int pluginIndex = 0;
+    while (true) {
+      while (pluginIndex < plugins.size() && pending.keySet().containsAll(plugins.get(pluginIndex).getAllReleases())) {
+        Plugin plugin = plugins.get(pluginIndex);
+        List<ReleaseFile> releaseFiles = new ArrayList<>();
+        for (Release release : plugin.getAllReleases()) {
+          releaseFiles.add(pending.remove(release));
+        }
+        merge.merge(plugin, releaseFiles);
+        pluginIndex++;
+      }
+      if (pluginIndex == plugins.size()) {
+        return;
+      }
+      Object item = take(completed);
+      if (item instanceof Failure) {
+        Failure failure = (Failure) item;
+        if (failure.release == null) {
+          throw new IllegalStateException("Fail to download releases", failure.cause);
+        }
+        throw new IllegalStateException("Fail to process release " + failure.release.getKey() + " " + failure.release.getVersion(), failure.cause);
+      }
+      ReleaseFile releaseFile = (ReleaseFile) item;
+      pending.put(releaseFile.release, releaseFile);
+    }
+  }
+
+  private static Object take(BlockingQueue<Object> queue) {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while processing releases", e);
+    }
+  }
+
+  @FunctionalInterface
+  private interface Stage {
+    ReleaseFile execute() throws Exception;
+  }
+
+  private static class Failure {
+    private final Release release;
+    private final Exception cause;
+
+    Failure(@Nullable Release release, Exception cause) {
+      this.release = release;
+      this.cause = cause;
+    }
+  }
+
+}
@@ -22,15 +22,25 @@ package org.sonar.updatecenter.mojo.editions;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.sonar.updatecenter.common.Plugin;
+import org.sonar.updatecenter.common.PluginReferential;
 import org.sonar.updatecenter.common.Release;
 import org.sonar.updatecenter.common.UpdateCenter;
 import org.sonar.updatecenter.common.Version;
+import org.sonar.updatecenter.mojo.OutputFiles;
 import org.sonar.updatecenter.mojo.editions.generators.EditionGenerator;
 
 public class EditionsGenerator {
@@ -41,6 +51,8 @@ public class EditionsGenerator {
   private final UpdateCenter updateCenter;
   private final EditionTemplatesLoader templatesLoader;
   private final String editionBuildNumber;
+  private boolean incremental = false;
+  private boolean deduplicateZips = false;
 
   public EditionsGenerator(UpdateCenter updateCenter, EditionTemplatesLoader templatesLoader, String editionBuildNumber) {
     this.updateCenter = updateCenter;
@@ -48,14 +60,59 @@ public class EditionsGenerator {
     this.editionBuildNumber = editionBuildNumber;
   }
 
+  /**
+   * In incremental mode, the output directory is not cleaned before generation. Generators keep the files
+   * that are up-to-date, then the files that are not generated anymore are deleted.
+   */
+  public EditionsGenerator setIncremental(boolean incremental) {
+    this.incremental = incremental;
+    return this;
+  }
+
+  /**
+   * When enabled, the editions of several SonarQube versions that are composed of exactly the same jars
+   * share the zip of the first of these versions, instead of each having a copy.
+   */
+  public EditionsGenerator setDeduplicateZips(boolean deduplicateZips) {
+    this.deduplicateZips = deduplicateZips;
+    return this;
+  }
+
   public void generateZipsJsonHtml(File outputDir, EditionGenerator... generators) throws Exception {
+    // modification times may be truncated to the second
+    long generationStart = System.currentTimeMillis() / 1_000L * 1_000L;
     FileUtils.forceMkdir(outputDir);
-    FileUtils.cleanDirectory(outputDir);
+    if (!incremental) {
+      FileUtils.cleanDirectory(outputDir);
+    }
 
     List<Edition> editions = createEditions();
+    Set<String> outputFileNames = new HashSet<>();
+    outputFileNames.add(OutputFiles.CHANGED_FILES);
     if (!editions.isEmpty()) {
       for (EditionGenerator generator : generators) {
         generator.generate(outputDir, editions);
+        outputFileNames.addAll(generator.outputFileNames(editions));
+      }
+    }
+    if (incremental) {
+      deleteStaleFiles(outputDir, outputFileNames, generationStart);
+    }
+  }
+
+  /**
+   * Deletes the regular files that are neither declared by the generators nor written by the generation.
+   * Directories are kept.
+   */
+  private static void deleteStaleFiles(File outputDir, Set<String> outputFileNames, long generationStart) throws IOException {
+    File[] files = outputDir.listFiles();
+    if (files == null) {
+      throw new IllegalStateException("Fail to list files of " + outputDir);
+    }
+    for (File file : files) {
+      if (file.isFile() && !outputFileNames.contains(file.getName()) && file.lastModified() < generationStart) {
+        LOGGER.info("Delete {}", file);
+        FileUtils.forceDelete(file);
       }
     }
   }
@@ -71,13 +128,56 @@ public class EditionsGenerator {
       .collect(Collectors.toList());
 
     List<Edition> editions = new ArrayList<>();
+    if (sqVersions.isEmpty()) {
+      return editions;
+    }
+    Map<String, Map<Version, Release>> compatibleReleases = loadCompatibleReleases(templates, sqVersions);
+    Map<List<Object>, String> zipFileNamesByContent = new HashMap<>();
     for (Version sqVersion : sqVersions) {
-      editions.addAll(generateForSqVersion(sqVersion, templates));
+      editions.addAll(generateForSqVersion(sqVersion, templates, compatibleReleases, zipFileNamesByContent));
     }
     return editions;
   }
 
-  private List<Edition> generateForSqVersion(Version sqVersion, List<EditionTemplate> templates) {
+  /**
+   * Resolves once the last compatible release of each plugin of templates for each SonarQube version.
+   * All the plugins that do not exist, or that are not compatible with some versions, are reported together.
+   *
+   * @return the last compatible release by SonarQube version, by plugin key
+   */
+  private Map<String, Map<Version, Release>> loadCompatibleReleases(List<EditionTemplate> templates, List<Version> sqVersions) {
+    PluginReferential pluginReferential = updateCenter.getUpdateCenterPluginReferential();
+    Set<String> pluginKeys = new LinkedHashSet<>();
+    templates.forEach(template -> pluginKeys.addAll(template.getPluginKeys()));
+
+    List<String> unknownPluginKeys = pluginKeys.stream()
+      .filter(pluginKey -> !pluginReferential.doesContainPlugin(pluginKey))
+      .collect(Collectors.toList());
+    if (!unknownPluginKeys.isEmpty()) {
+      throw new NoSuchElementException("Unable to find plugin with key " + String.join(", ", unknownPluginKeys));
+    }
+
+    Map<String, Map<Version, Release>> compatibleReleases = new HashMap<>();
+    for (String pluginKey : pluginKeys) {
+      Map<Version, Release> releasesBySqVersion = pluginReferential.findPlugin(pluginKey).getLastCompatibleBySonarVersion(sqVersions);
+      compatibleReleases.put(pluginKey, releasesBySqVersion);
+      List<String> incompatibleSqVersions = sqVersions.stream()
+        .filter(sqVersion -> !releasesBySqVersion.containsKey(sqVersion))
+        .map(Version::getName)
+        .collect(Collectors.toList());
+      if (!incompatibleSqVersions.isEmpty()) {
+        LOGGER.warn("Plugin {} has no release compatible with SonarQube {}.", pluginKey, String.join(", ", incompatibleSqVersions));
+      }
+    }
+    return compatibleReleases;
+  }
+
+  /**
+   * @param compatibleReleases see {@link #loadCompatibleReleases(List, List)}
+   * @param zipFileNamesByContent the zips of the editions already created, by edition key and jars
+   */
+  private List<Edition> generateForSqVersion(Version sqVersion, List<EditionTemplate> templates, Map<String, Map<Version, Release>> compatibleReleases,
+    Map<List<Object>, String> zipFileNamesByContent) {
     List<Edition> editions = new ArrayList<>();
 
     for (EditionTemplate template : templates) {
@@ -94,24 +194,27 @@ public class EditionsGenerator {
 
       boolean missingPlugin = false;
       boolean generateZip = false;
+      SortedSet<String> jars = new TreeSet<>();
       for (String pluginKey : template.getPluginKeys()) {
-        Plugin plugin = updateCenter.getUpdateCenterPluginReferential().findPlugin(pluginKey);
-        Release pluginRelease = plugin.getLastCompatibleRelease(sqVersion);
+        Release pluginRelease = compatibleReleases.get(pluginKey).get(sqVersion);
         if (pluginRelease == null) {
-          LOGGER.warn("Plugin {} has no release compatible with SonarQube {}.", pluginKey, sqVersion);
           missingPlugin = true;
         } else {
           builder.addJar(pluginRelease.getFilename());
+          jars.add(pluginRelease.getFilename());
           generateZip = true;
         }
       }
 
-      if (generateZip) {
-        String zipFileName = template.getKey() + "-edition-" + EditionVersion.create(sqVersion, editionBuildNumber).toString() + ".zip";
-        builder.setZipFileName(zipFileName);
-      }
-
       if (!missingPlugin) {
+        if (generateZip) {
+          String zipFileName = template.getKey() + "-edition-" + EditionVersion.create(sqVersion, editionBuildNumber).toString() + ".zip";
+          if (deduplicateZips) {
+            builder.setZipFileName(zipFileNamesByContent.computeIfAbsent(Arrays.asList(template.getKey(), jars), k -> zipFileName));
+          } else {
+            builder.setZipFileName(zipFileName);
+          }
+        }
         editions.add(builder.build());
       }
     }
@@ -20,9 +20,20 @@
 package org.sonar.updatecenter.mojo.editions.generators;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import org.sonar.updatecenter.mojo.editions.Edition;
 
 public interface EditionGenerator {
   void generate(File outputDir, List<Edition> editions) throws Exception;
+
+  /**
+   * Names of the files that {@link #generate(File, List)} creates in the output directory, including the files
+   * that are up-to-date and not written again. In incremental mode, the other files of the directory that are
+   * not written by the generation are deleted. None by default.
+   */
+  default Set<String> outputFileNames(List<Edition> editions) {
+    return Collections.emptySet();
+  }
 }
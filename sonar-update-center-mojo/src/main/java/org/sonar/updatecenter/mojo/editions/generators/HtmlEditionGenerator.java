@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +33,7 @@ import org.sonar.updatecenter.common.Release;
 import org.sonar.updatecenter.common.UpdateCenter;
 import org.sonar.updatecenter.mojo.FreeMarkerUtils;
 import org.sonar.updatecenter.mojo.HtmlSQVersionModel;
+import org.sonar.updatecenter.mojo.OutputFiles;
 import org.sonar.updatecenter.mojo.editions.Edition;
 
 import static org.sonar.updatecenter.mojo.editions.EditionsGenerator.MIN_SUPPORTED_SQ_VERSION;
@@ -44,17 +46,28 @@ import static org.sonar.updatecenter.mojo.editions.EditionsGenerator.MIN_SUPPORT
  */
 public class HtmlEditionGenerator implements EditionGenerator {
   private static final Logger LOGGER = LoggerFactory.getLogger(HtmlEditionGenerator.class);
+  private static final String TEMPLATE = "editions/editions-template.html.ftl";
   private final UpdateCenter updateCenter;
   private final String downloadBaseUrl;
+  private final OutputFiles output;
 
   public HtmlEditionGenerator(UpdateCenter updateCenter, String downloadBaseUrl) {
+    this(updateCenter, downloadBaseUrl, new OutputFiles());
+  }
+
+  /**
+   * @param output files are written only if their content changed
+   */
+  public HtmlEditionGenerator(UpdateCenter updateCenter, String downloadBaseUrl, OutputFiles output) {
     this.updateCenter = updateCenter;
     this.downloadBaseUrl = downloadBaseUrl;
+    this.output = output;
   }
 
   @Override
   public void generate(File outputDir, List<Edition> editions) {
     LOGGER.info("Generate HTML files");
+    FreeMarkerUtils.precompile(TEMPLATE);
 
     Map<String, Release> majorReleases = new LinkedHashMap<>();
     // We want to keep only latest patch version. For example for 3.7, 3.7.1, 3.7.2 we keep only 3.7.2
@@ -71,9 +84,20 @@ public class HtmlEditionGenerator implements EditionGenerator {
     }
   }
 
+  @Override
+  public Set<String> outputFileNames(List<Edition> editions) {
+    return editions.stream()
+      .flatMap(edition -> output.fileNames(fileName(edition)).stream())
+      .collect(Collectors.toSet());
+  }
+
+  private static String fileName(Edition edition) {
+    return "edition-" + edition.getKey() + ".html";
+  }
+
   private void generateEditionHtml(File outputDir, Map<String, Release> majorReleases, List<Edition> editionList) {
     Edition edition = editionList.iterator().next();
-    File editionHtmlOutputFile = new File(outputDir, "edition-" + edition.getKey() + ".html");
+    File editionHtmlOutputFile = new File(outputDir, fileName(edition));
     HtmlEditionModel htmlEdition = new HtmlEditionModel(edition.getName());
 
     for (Edition e : editionList) {
@@ -107,6 +131,6 @@ public class HtmlEditionGenerator implements EditionGenerator {
     dataModel.put("edition", htmlEditionModel);
     dataModel.put("sqVersions", htmlSqVersions);
     dataModel.put("downloadBaseUrl", downloadBaseUrl);
-    FreeMarkerUtils.print(dataModel, htmlFile, "editions/editions-template.html.ftl");
+    FreeMarkerUtils.print(dataModel, htmlFile, TEMPLATE, output);
   }
 }
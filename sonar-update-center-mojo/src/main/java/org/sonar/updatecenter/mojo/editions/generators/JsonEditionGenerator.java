@@ -21,19 +21,21 @@ package org.sonar.updatecenter.mojo.editions.generators;
 
 import com.google.gson.stream.JsonWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.updatecenter.mojo.OutputFiles;
 import org.sonar.updatecenter.mojo.editions.Edition;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -42,18 +44,32 @@ public class JsonEditionGenerator implements EditionGenerator {
   private static final Logger LOGGER = LoggerFactory.getLogger(JsonEditionGenerator.class);
   static final String FILE_NAME = "editions.json";
   private final String downloadBaseUrl;
+  private final OutputFiles output;
 
   public JsonEditionGenerator(String downloadBaseUrl) {
+    this(downloadBaseUrl, new OutputFiles());
+  }
+
+  /**
+   * @param output files are written only if their content changed
+   */
+  public JsonEditionGenerator(String downloadBaseUrl, OutputFiles output) {
     this.downloadBaseUrl = downloadBaseUrl;
+    this.output = output;
   }
 
   @Override
   public void generate(File outputDir, List<Edition> editions) throws IOException {
     File jsonOutput = new File(outputDir, FILE_NAME);
-    try (Writer jsonWriter = new OutputStreamWriter(new FileOutputStream(jsonOutput), UTF_8)) {
-      LOGGER.info("Generate {}", jsonOutput.getAbsolutePath());
-      write(editions, downloadBaseUrl, jsonWriter);
-    }
+    LOGGER.info("Generate {}", jsonOutput.getAbsolutePath());
+    StringWriter jsonWriter = new StringWriter();
+    write(editions, downloadBaseUrl, jsonWriter);
+    output.write(jsonOutput, jsonWriter.toString().getBytes(UTF_8));
+  }
+
+  @Override
+  public Set<String> outputFileNames(List<Edition> editions) {
+    return new HashSet<>(output.fileNames(FILE_NAME));
   }
 
   private void write(List<Edition> editions, String downloadBaseUrl, Writer writer) throws IOException {
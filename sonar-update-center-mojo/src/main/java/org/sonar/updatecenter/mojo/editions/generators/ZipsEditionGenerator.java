@@ -19,28 +19,93 @@
  */
 package org.sonar.updatecenter.mojo.editions.generators;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
-import org.apache.commons.io.IOUtils;
+import javax.annotation.CheckForNull;
+import org.sonar.updatecenter.common.DaemonThreadFactory;
+import org.sonar.updatecenter.mojo.Digests;
+import org.sonar.updatecenter.mojo.OutputFiles;
 import org.sonar.updatecenter.mojo.editions.Edition;
 
+/**
+ * Zips are generated incrementally. The fingerprint of the inputs of a zip (its name, and the names and SHA-256
+ * of its jars) is stored as the comment of the zip, and the zip is generated again only if the fingerprint changes.
+ * <p/>
+ * Zips are independent, so they are generated concurrently. Each zip is written to a temporary file, then
+ * atomically renamed, so that an interrupted generation never leaves a partial zip.
+ */
 public class ZipsEditionGenerator implements EditionGenerator {
+  private static final String FINGERPRINT_PREFIX = "fingerprint:";
+
+  /**
+   * How jars are added to zips. Jars are already compressed, so deflating them again costs CPU
+   * for almost no gain of size.
+   */
+  public enum Compression {
+    STORED(ZipEntry.STORED), DEFLATED(ZipEntry.DEFLATED);
+
+    private final int method;
+
+    Compression(int method) {
+      this.method = method;
+    }
+  }
+
   private final File jarsDir;
+  private final OutputFiles output;
+  private final Map<File, JarChecksums> jarChecksums = new ConcurrentHashMap<>();
+  private Compression compression = Compression.STORED;
+  private int parallelism = 1;
 
   public ZipsEditionGenerator(File jarsDir) {
+    this(jarsDir, new OutputFiles());
+  }
+
+  /**
+   * @param output the generated zips are marked as changed
+   */
+  public ZipsEditionGenerator(File jarsDir, OutputFiles output) {
     if (!jarsDir.exists()) {
       throw new IllegalArgumentException("Directory does not exist: " + jarsDir.getAbsolutePath());
     }
     this.jarsDir = jarsDir;
+    this.output = output;
+  }
+
+  /**
+   * Default is {@link Compression#STORED}
+   */
+  public ZipsEditionGenerator setCompression(Compression compression) {
+    this.compression = compression;
+    return this;
+  }
+
+  /**
+   * Maximum number of zips generated at the same time. Default is 1.
+   */
+  public ZipsEditionGenerator setParallelism(int parallelism) {
+    this.parallelism = DaemonThreadFactory.checkParallelism(parallelism);
+    return this;
   }
 
   /**
@@ -52,10 +117,98 @@ public class ZipsEditionGenerator implements EditionGenerator {
    */
   @Override
   public void generate(File outputDir, List<Edition> editions) throws Exception {
+    Map<File, List<File>> jarsByZip = new LinkedHashMap<>();
     for (Edition e : editions) {
       if (e.getZipFileName() != null) {
-        zip(new File(outputDir, e.getZipFileName()), jarFiles(e.jars()));
+        jarsByZip.put(new File(outputDir, e.getZipFileName()), jarFiles(e.jars()));
+      }
+    }
+    if (jarsByZip.isEmpty()) {
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, jarsByZip.size()), new DaemonThreadFactory("edition-zip"));
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (Map.Entry<File, List<File>> entry : jarsByZip.entrySet()) {
+        futures.add(executor.submit(() -> {
+          generateZip(entry.getKey(), entry.getValue());
+          return null;
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
       }
+      throw e;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Override
+  public Set<String> outputFileNames(List<Edition> editions) {
+    return editions.stream()
+      .map(Edition::getZipFileName)
+      .filter(Objects::nonNull)
+      .collect(Collectors.toSet());
+  }
+
+  private void generateZip(File zipFile, List<File> jars) throws IOException {
+    String fingerprint = FINGERPRINT_PREFIX + fingerprint(zipFile, jars);
+    if (fingerprint.equals(readFingerprint(zipFile))) {
+      return;
+    }
+    File tempFile = File.createTempFile("." + zipFile.getName(), ".tmp", zipFile.getAbsoluteFile().getParentFile());
+    try {
+      zip(tempFile, jars, fingerprint);
+      Files.move(tempFile.toPath(), zipFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tempFile.toPath());
+    }
+    output.markChanged(zipFile);
+  }
+
+  private String fingerprint(File zipFile, List<File> jars) throws IOException {
+    StringBuilder inputs = new StringBuilder(zipFile.getName()).append(' ').append(compression).append('\n');
+    List<File> sortedJars = new ArrayList<>(jars);
+    sortedJars.sort(Comparator.comparing(File::getName));
+    for (File jar : sortedJars) {
+      inputs.append(jar.getName()).append(' ').append(jarChecksums(jar).sha256).append('\n');
+    }
+    return Digests.sha256(inputs.toString());
+  }
+
+  /**
+   * The same jars are included in the editions of many SonarQube versions, so each jar is usually read once.
+   * The CRC-32 required by stored entries is computed in the same pass as the SHA-256 of the fingerprint.
+   */
+  private JarChecksums jarChecksums(File jar) throws IOException {
+    JarChecksums checksums = jarChecksums.get(jar);
+    if (checksums == null) {
+      CRC32 crc = new CRC32();
+      String sha256 = Digests.digest(jar, crc, Digests.SHA256)[0];
+      checksums = new JarChecksums(sha256, crc.getValue());
+      jarChecksums.putIfAbsent(jar, checksums);
+    }
+    return checksums;
+  }
+
+  /**
+   * @return null if the zip does not exist or is not valid
+   */
+  @CheckForNull
+  private static String readFingerprint(File zipFile) {
+    if (!zipFile.isFile()) {
+      return null;
+    }
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      return zip.getComment();
+    } catch (IOException e) {
+      return null;
     }
   }
 
@@ -73,18 +226,35 @@ public class ZipsEditionGenerator implements EditionGenerator {
     return jarFile;
   }
 
-  private static File zip(File zipFile, List<File> files) throws IOException {
+  private File zip(File zipFile, List<File> files, String comment) throws IOException {
 
     try (ZipOutputStream zipOutput = new ZipOutputStream(new FileOutputStream(zipFile, false))) {
+      zipOutput.setComment(comment);
+      zipOutput.setMethod(compression.method);
       for (File file : files) {
-        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
-          ZipEntry entry = new ZipEntry(file.getName());
-          zipOutput.putNextEntry(entry);
-          IOUtils.copy(in, zipOutput);
-          zipOutput.closeEntry();
+        ZipEntry entry = new ZipEntry(file.getName());
+        if (compression == Compression.STORED) {
+          // size and CRC must be known before the data of stored entries
+          entry.setSize(file.length());
+          entry.setCompressedSize(file.length());
+          entry.setCrc(jarChecksums(file).crc32);
         }
+        zipOutput.putNextEntry(entry);
+        Files.copy(file.toPath(), zipOutput);
+        zipOutput.closeEntry();
       }
     }
     return zipFile;
   }
+
+  private static class JarChecksums {
+    private final String sha256;
+    private final long crc32;
+
+    JarChecksums(String sha256, long crc32) {
+      this.sha256 = sha256;
+      this.crc32 = crc32;
+    }
+  }
+
 }
@@ -0,0 +1,39 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FreeMarkerUtilsTest {
+
+  @Test
+  public void compile_each_template_once() {
+    FreeMarkerUtils.precompile("matrix-template.html.ftl");
+
+    assertThat(FreeMarkerUtils.getTemplate("matrix-template.html.ftl")).isSameAs(FreeMarkerUtils.getTemplate("matrix-template.html.ftl"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void fail_to_precompile_unknown_template() {
+    FreeMarkerUtils.precompile("unknown.ftl");
+  }
+}
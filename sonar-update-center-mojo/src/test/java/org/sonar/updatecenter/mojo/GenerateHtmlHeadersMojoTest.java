@@ -42,7 +42,7 @@ public class GenerateHtmlHeadersMojoTest {
     FileUtils.copyFileToDirectory(resource("sonar-artifact-size-plugin-0.3.jar"), outputDir);
 
     File inputFile = resource("update-center-template/update-center.properties");
-    new GenerateHtmlHeadersMojo().setInputFile(inputFile).setOutputDir(outputDir).execute();
+    new GenerateHtmlHeadersMojo().setInputFile(inputFile).setOutputDir(outputDir).setCacheDir(temp.newFolder()).execute();
 
     // html confluence include
     File htmlConfluenceInclude = new File(outputDir, "html/artifactsize-confluence-include.html");
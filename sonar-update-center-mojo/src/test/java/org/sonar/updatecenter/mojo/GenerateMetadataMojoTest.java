@@ -19,14 +19,24 @@
  */
 package org.sonar.updatecenter.mojo;
 
+import com.sun.net.httpserver.HttpServer;
 import java.io.File;
+import java.net.InetSocketAddress;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.maven.plugin.logging.SystemStreamLog;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.sonar.updatecenter.common.Plugin;
+import org.sonar.updatecenter.common.Release;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
@@ -48,6 +58,7 @@ public class GenerateMetadataMojoTest {
     GenerateMetadataMojo underTest = new GenerateMetadataMojo();
     underTest.inputFile = inputFile;
     underTest.outputDir = outputDir;
+    underTest.cacheDir = temp.newFolder();
     underTest.editionsDownloadBaseUrl = "http://bintray/";
     underTest.editionsOutputDir = temp.newFolder();
     underTest.editionTemplateProperties = new File("src/test/resources/org/sonar/updatecenter/mojo/GenerateMojoTest/edition-templates.properties");
@@ -74,7 +85,8 @@ public class GenerateMetadataMojoTest {
     FileUtils.copyFileToDirectory(resource("fxcop-plugin-1.1-SNAPSHOT.jar"), outputDir);
 
     File inputFile = resource("update-center-template-for-requires-and-parent/update-center.properties");
-    Configuration configuration = new Configuration(outputDir, inputFile, true, false, false, new SystemStreamLog());
+    Configuration configuration = new Configuration(outputDir, inputFile, true, false, false, new SystemStreamLog())
+      .setCacheDir(temp.newFolder());
     configuration.getUpdateCenter().getUpdateCenterPluginReferential().findPlugin("csharp").getRelease("1.1-SNAPSHOT")
       .setDownloadUrl(url("csharp-plugin-1.1-SNAPSHOT.jar").toString());
     configuration.getUpdateCenter().getUpdateCenterPluginReferential().findPlugin("fxcop").getRelease("1.1-SNAPSHOT")
@@ -101,7 +113,8 @@ public class GenerateMetadataMojoTest {
     FileUtils.copyFileToDirectory(resource("sonar-artifact-size-plugin-0.4.jar"), outputDir);
 
     File inputFile = resource("update-center-template/update-center.properties");
-    Configuration configuration = new Configuration(outputDir, inputFile, false, false, true, new SystemStreamLog());
+    Configuration configuration = new Configuration(outputDir, inputFile, false, false, true, new SystemStreamLog())
+      .setCacheDir(temp.newFolder());
     new Generator(configuration, new SystemStreamLog()).generateMetadata();
 
     // verify that properties file is generated
@@ -123,7 +136,8 @@ public class GenerateMetadataMojoTest {
     FileUtils.copyFileToDirectory(resource("sonar-artifact-size-plugin-0.4.jar"), outputDir);
 
     File inputFile = resource("key-mismatch/update-center.properties");
-    Configuration configuration = new Configuration(outputDir, inputFile, false, false, true, new SystemStreamLog());
+    Configuration configuration = new Configuration(outputDir, inputFile, false, false, true, new SystemStreamLog())
+      .setCacheDir(temp.newFolder());
     try {
       new Generator(configuration, new SystemStreamLog()).generateMetadata();
       fail("Expected exception");
@@ -133,6 +147,63 @@ public class GenerateMetadataMojoTest {
     }
   }
 
+  @Test
+  public void download_releases_concurrently() throws Exception {
+    AtomicInteger connections = new AtomicInteger();
+    AtomicInteger maxConnections = new AtomicInteger();
+    List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/", exchange -> {
+      maxConnections.accumulateAndGet(connections.incrementAndGet(), Math::max);
+      try {
+        String filename = StringUtils.substringAfterLast(exchange.getRequestURI().getPath(), "/");
+        if (filename.endsWith(".jar")) {
+          requests.add(filename);
+          byte[] jar = FileUtils.readFileToByteArray(resource(filename));
+          Thread.sleep(50);
+          // the client may release its connection as soon as it receives the response
+          connections.decrementAndGet();
+          exchange.sendResponseHeaders(200, jar.length);
+          exchange.getResponseBody().write(jar);
+        } else {
+          connections.decrementAndGet();
+          exchange.sendResponseHeaders(404, -1);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        exchange.close();
+      }
+    });
+    server.start();
+    try {
+      File outputDir = temp.newFolder();
+      File inputFile = resource("update-center-template-for-requires-and-parent/update-center.properties");
+      Configuration configuration = new Configuration(outputDir, inputFile, true, false, false, new SystemStreamLog())
+        .setCacheDir(temp.newFolder())
+        .setDownloadParallelism(4)
+        .setMaxConnectionsPerHost(2);
+      String baseUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+      for (Plugin plugin : configuration.getUpdateCenter().getUpdateCenterPluginReferential().getPlugins()) {
+        for (Release release : plugin.getAllReleases()) {
+          release.setDownloadUrl(baseUrl + plugin.getKey() + "-plugin-" + release.getVersion() + ".jar");
+        }
+      }
+      new Generator(configuration, new SystemStreamLog()).generateMetadata();
+
+      assertThat(requests).containsOnly("csharp-plugin-1.0.jar", "csharp-plugin-1.1-SNAPSHOT.jar", "dotnet-plugin-1.0.jar",
+        "dotnet-plugin-1.1-SNAPSHOT.jar", "fxcop-plugin-1.0.jar", "fxcop-plugin-1.1-SNAPSHOT.jar").hasSize(6);
+      assertThat(maxConnections.get()).isBetween(1, 2);
+      String output = FileUtils.readFileToString(new File(outputDir, "sonar-updates.properties"), StandardCharsets.UTF_8);
+      assertThat(output).contains("csharp.1.0.requirePlugins=dotnet\\:1.0");
+      assertThat(output).contains("csharp.1.1-SNAPSHOT.requirePlugins=dotnet\\:1.1");
+      assertThat(output).contains("csharp.1.0.displayVersion=1.0 (build 42)");
+    } finally {
+      server.stop(0);
+    }
+  }
+
   private File resource(String filename) {
     return FileUtils.toFile(url(filename));
   }
@@ -0,0 +1,463 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class HttpDownloaderTest {
+
+  private static final String ETAG = "\"v1\"";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private HttpServer server;
+  private final List<String> responses = Collections.synchronizedList(new ArrayList<>());
+  private volatile String content = "content of v1";
+  private volatile String etag = ETAG;
+  private final Map<String, String> checksums = new ConcurrentHashMap<>();
+  private final AtomicInteger truncatedResponses = new AtomicInteger();
+  private final AtomicInteger serverErrors = new AtomicInteger();
+  private final AtomicInteger ignoredRanges = new AtomicInteger();
+  private final List<String> checksumRequests = Collections.synchronizedList(new ArrayList<>());
+  private final AtomicInteger checksumErrors = new AtomicInteger();
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", this::serve);
+    server.start();
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    try {
+      String path = exchange.getRequestURI().getPath();
+      if (path.endsWith(".sha1") || path.endsWith(".sha256")) {
+        checksumRequests.add(path.substring(1));
+        String checksum = checksums.get(path.substring(1));
+        if (checksumErrors.getAndDecrement() > 0) {
+          exchange.sendResponseHeaders(500, -1);
+        } else if (checksum == null) {
+          exchange.sendResponseHeaders(404, -1);
+        } else {
+          byte[] bytes = (checksum + "  " + path).getBytes(StandardCharsets.UTF_8);
+          exchange.sendResponseHeaders(200, bytes.length);
+          exchange.getResponseBody().write(bytes);
+        }
+      } else if (serverErrors.getAndDecrement() > 0) {
+        responses.add("503");
+        exchange.sendResponseHeaders(503, -1);
+      } else if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        responses.add("304");
+        exchange.sendResponseHeaders(304, -1);
+      } else {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("ETag", etag);
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && etag.equals(exchange.getRequestHeaders().getFirst("If-Range"))) {
+          int start = ignoredRanges.getAndDecrement() > 0 ? 0 : Integer.parseInt(StringUtils.substringBetween(range, "bytes=", "-"));
+          responses.add("206 " + range);
+          exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (bytes.length - 1) + "/" + bytes.length);
+          exchange.sendResponseHeaders(206, bytes.length - start);
+          exchange.getResponseBody().write(bytes, start, bytes.length - start);
+        } else if (truncatedResponses.getAndDecrement() > 0) {
+          // connection is closed before the end of the content
+          responses.add("200 truncated");
+          exchange.sendResponseHeaders(200, bytes.length);
+          exchange.getResponseBody().write(bytes, 0, bytes.length / 2);
+          exchange.getResponseBody().flush();
+        } else {
+          responses.add("200");
+          exchange.sendResponseHeaders(200, bytes.length);
+          exchange.getResponseBody().write(bytes);
+        }
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private String url(String filename) {
+    return "http://localhost:" + server.getAddress().getPort() + "/" + filename;
+  }
+
+  private HttpDownloader newDownloader(File outputDir) throws IOException {
+    return new HttpDownloader(outputDir, temp.newFolder(), new SystemStreamLog(), Integer.MAX_VALUE);
+  }
+
+  @Test
+  public void use_conditional_request_when_download_is_forced() throws Exception {
+    File cacheDir = temp.newFolder();
+    HttpDownloader underTest = new HttpDownloader(temp.newFolder(), cacheDir, new SystemStreamLog(), 1);
+
+    File file = underTest.download(url("foo-1.0-SNAPSHOT.jar"), true);
+    assertThat(file).hasContent("content of v1");
+    assertThat(new ContentAddressedCache(cacheDir).getMetadataFile(url("foo-1.0-SNAPSHOT.jar"))).isFile();
+
+    // not modified
+    file = underTest.download(url("foo-1.0-SNAPSHOT.jar"), true);
+    assertThat(file).hasContent("content of v1");
+    assertThat(responses).containsExactly("200", "304");
+
+    // modified
+    content = "content of v2";
+    etag = "\"v2\"";
+    file = underTest.download(url("foo-1.0-SNAPSHOT.jar"), true);
+    assertThat(file).hasContent("content of v2");
+    assertThat(responses).containsExactly("200", "304", "200");
+  }
+
+  @Test
+  public void restore_output_file_modified_since_download() throws Exception {
+    File outputDir = temp.newFolder();
+    HttpDownloader underTest = newDownloader(outputDir);
+
+    underTest.download(url("foo-1.0-SNAPSHOT.jar"), true);
+    File output = new File(outputDir, "foo-1.0-SNAPSHOT.jar");
+    Files.delete(output.toPath());
+    FileUtils.write(output, "truncated", StandardCharsets.UTF_8);
+
+    underTest.download(url("foo-1.0-SNAPSHOT.jar"), true);
+    assertThat(output).hasContent("content of v1");
+    assertThat(responses).containsExactly("200", "304");
+  }
+
+  @Test
+  public void do_not_request_server_if_file_is_in_cache() throws Exception {
+    File outputDir = temp.newFolder();
+    HttpDownloader underTest = newDownloader(outputDir);
+
+    underTest.download(url("foo-1.0.jar"), false);
+    File file = underTest.download(url("foo-1.0.jar"), false);
+
+    assertThat(file).hasContent("content of v1");
+    assertThat(responses).containsExactly("200");
+  }
+
+  @Test
+  public void replace_output_file_that_does_not_match_cache() throws Exception {
+    File outputDir = temp.newFolder();
+    HttpDownloader underTest = newDownloader(outputDir);
+
+    underTest.download(url("foo-1.0.jar"), false);
+    File output = new File(outputDir, "foo-1.0.jar");
+    Files.delete(output.toPath());
+    FileUtils.write(output, "content of v0", StandardCharsets.UTF_8);
+
+    File file = underTest.download(url("foo-1.0.jar"), false);
+    assertThat(file).hasContent("content of v1");
+    assertThat(output).hasContent("content of v1");
+    assertThat(responses).containsExactly("200");
+  }
+
+  @Test
+  public void keep_files_of_urls_with_the_same_filename() throws Exception {
+    File outputDir = temp.newFolder();
+    File cacheDir = temp.newFolder();
+    HttpDownloader underTest = new HttpDownloader(outputDir, cacheDir, new SystemStreamLog(), 1);
+
+    content = "content of first";
+    File first = underTest.download(url("first/foo-1.0.jar"), false);
+    content = "content of second";
+    File second = underTest.download(url("second/foo-1.0.jar"), false);
+
+    assertThat(first).hasContent("content of first");
+    assertThat(second).hasContent("content of second");
+    assertThat(new File(outputDir, "foo-1.0.jar")).hasContent("content of second");
+
+    // next execution
+    first = new HttpDownloader(outputDir, cacheDir, new SystemStreamLog(), 1).download(url("first/foo-1.0.jar"), false);
+    assertThat(first).hasContent("content of first");
+    assertThat(new File(outputDir, "foo-1.0.jar")).hasContent("content of first");
+    assertThat(responses).containsExactly("200", "200");
+  }
+
+  @Test
+  public void do_not_take_output_file_downloaded_from_another_url() throws Exception {
+    File outputDir = temp.newFolder();
+    File cacheDir = temp.newFolder();
+    content = "content of first";
+    new HttpDownloader(outputDir, cacheDir, new SystemStreamLog(), 1).download(url("first/foo-1.0.jar"), false);
+
+    content = "content of second";
+    File second = new HttpDownloader(outputDir, cacheDir, new SystemStreamLog(), 1).download(url("second/foo-1.0.jar"), false);
+    assertThat(second).hasContent("content of second");
+    assertThat(new File(outputDir, "foo-1.0.jar")).hasContent("content of second");
+    assertThat(responses).containsExactly("200", "200");
+  }
+
+  @Test
+  public void trust_output_file_unknown_to_cache() throws Exception {
+    File outputDir = temp.newFolder();
+    FileUtils.write(new File(outputDir, "foo-1.0.jar"), "copied beforehand", StandardCharsets.UTF_8);
+    HttpDownloader underTest = newDownloader(outputDir);
+
+    assertThat(underTest.download(url("foo-1.0.jar"), false)).hasContent("copied beforehand");
+    assertThat(responses).isEmpty();
+  }
+
+  @Test
+  public void verify_checksum_if_published() throws Exception {
+    checksums.put("foo-1.0.jar.sha1", "e0b6e8b8b4b1b5ea8dd33e56c5dff0bd0a2af8c5");
+    checksums.put("bar-1.0.jar.sha256", Digests.sha256("content of v1"));
+    HttpDownloader underTest = newDownloader(temp.newFolder());
+
+    assertThat(underTest.download(url("bar-1.0.jar"), false)).hasContent("content of v1");
+    try {
+      underTest.download(url("foo-1.0.jar"), false);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getCause()).hasMessageContaining("declares e0b6e8b8b4b1b5ea8dd33e56c5dff0bd0a2af8c5");
+    }
+  }
+
+  @Test
+  public void keep_download_if_checksum_can_not_be_fetched() throws Exception {
+    checksums.put("foo-1.0.jar.sha256", Digests.sha256("content of v1"));
+    checksumErrors.set(1);
+    HttpDownloader underTest = newDownloader(temp.newFolder());
+
+    assertThat(underTest.download(url("foo-1.0.jar"), false)).hasContent("content of v1");
+    assertThat(checksumRequests).containsExactly("foo-1.0.jar.sha256", "foo-1.0.jar.sha1");
+    assertThat(responses).containsExactly("200");
+  }
+
+  @Test
+  public void do_not_request_checksums_that_host_does_not_publish() throws Exception {
+    HttpDownloader underTest = newDownloader(temp.newFolder());
+
+    underTest.download(url("bar-1.0.jar"), false);
+    underTest.download(url("baz-1.0.jar"), false);
+
+    assertThat(checksumRequests).containsExactly("bar-1.0.jar.sha256", "bar-1.0.jar.sha1");
+  }
+
+  @Test
+  public void share_cache_between_output_directories() throws Exception {
+    File cacheDir = temp.newFolder();
+    File first = new HttpDownloader(temp.newFolder(), cacheDir, new SystemStreamLog(), 1).download(url("foo-1.0.jar"), false);
+    File second = new HttpDownloader(temp.newFolder(), cacheDir, new SystemStreamLog(), 1).download(url("foo-1.0.jar"), false);
+
+    assertThat(second).hasContent("content of v1");
+    assertThat(Files.isSameFile(first.toPath(), second.toPath())).isTrue();
+    assertThat(responses).containsExactly("200");
+  }
+
+  @Test
+  public void resume_interrupted_download() throws Exception {
+    content = "a long content that is sent in two parts";
+    truncatedResponses.set(1);
+    HttpDownloader underTest = newDownloader(temp.newFolder()).setRetries(2, 1L);
+
+    File file = underTest.download(url("foo-1.0.jar"), false);
+
+    assertThat(file).hasContent("a long content that is sent in two parts");
+    assertThat(responses).containsExactly("200 truncated", "206 bytes=20-");
+  }
+
+  @Test
+  public void restart_download_if_server_sends_another_range() throws Exception {
+    content = "a long content that is sent in two parts";
+    truncatedResponses.set(1);
+    ignoredRanges.set(1);
+    HttpDownloader underTest = newDownloader(temp.newFolder()).setRetries(2, 1L);
+
+    File file = underTest.download(url("foo-1.0.jar"), false);
+
+    assertThat(file).hasContent("a long content that is sent in two parts");
+    assertThat(responses).containsExactly("200 truncated", "206 bytes=20-", "200");
+  }
+
+  @Test
+  public void do_not_resume_download_with_weak_etag() throws Exception {
+    content = "a long content that is sent in two parts";
+    etag = "W/\"v1\"";
+    truncatedResponses.set(1);
+    HttpDownloader underTest = newDownloader(temp.newFolder()).setRetries(2, 1L);
+
+    File file = underTest.download(url("foo-1.0.jar"), false);
+
+    assertThat(file).hasContent("a long content that is sent in two parts");
+    assertThat(responses).containsExactly("200 truncated", "200");
+  }
+
+  @Test
+  public void delete_temporary_files_once_downloaded() throws Exception {
+    File cacheDir = temp.newFolder();
+    content = "a long content that is sent in two parts";
+    truncatedResponses.set(1);
+    new HttpDownloader(temp.newFolder(), cacheDir, new SystemStreamLog(), 1).setRetries(2, 1L).download(url("foo-1.0.jar"), false);
+
+    assertThat(new File(cacheDir, "tmp").list()).isEmpty();
+  }
+
+  @Test
+  public void keep_partial_download_for_next_execution() throws Exception {
+    content = "a long content that is sent in two parts";
+    truncatedResponses.set(1);
+    File outputDir = temp.newFolder();
+    File cacheDir = temp.newFolder();
+    try {
+      new HttpDownloader(outputDir, cacheDir, new SystemStreamLog(), 1).setRetries(1, 1L).download(url("foo-1.0.jar"), false);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(new File(outputDir, "foo-1.0.jar")).doesNotExist();
+    }
+
+    File file = new HttpDownloader(outputDir, cacheDir, new SystemStreamLog(), 1).setRetries(1, 1L).download(url("foo-1.0.jar"), false);
+    assertThat(file).hasContent("a long content that is sent in two parts");
+    assertThat(responses).containsExactly("200 truncated", "206 bytes=20-");
+  }
+
+  @Test
+  public void retry_on_server_error() throws Exception {
+    serverErrors.set(2);
+    HttpDownloader underTest = newDownloader(temp.newFolder()).setRetries(3, 1L);
+
+    assertThat(underTest.download(url("foo-1.0.jar"), false)).hasContent("content of v1");
+    assertThat(responses).containsExactly("503", "503", "200");
+  }
+
+  @Test
+  public void fail_when_all_attempts_fail() throws Exception {
+    serverErrors.set(3);
+    HttpDownloader underTest = newDownloader(temp.newFolder()).setRetries(3, 1L);
+    try {
+      underTest.download(url("foo-1.0.jar"), false);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getCause()).hasMessageContaining("503");
+      assertThat(responses).containsExactly("503", "503", "503");
+    }
+  }
+
+  @Test
+  public void copy_local_file() throws Exception {
+    File src = temp.newFile("foo-1.0.jar");
+    FileUtils.write(src, "local content", StandardCharsets.UTF_8);
+    HttpDownloader underTest = newDownloader(temp.newFolder());
+
+    File file = underTest.download(src.toURI().toURL().toString(), false);
+
+    assertThat(file).hasContent("local content");
+    assertThat(Files.isSameFile(src.toPath(), file.toPath())).isFalse();
+  }
+
+  @Test
+  public void link_local_file() throws Exception {
+    File src = temp.newFile("foo-1.0.jar");
+    FileUtils.write(src, "local content", StandardCharsets.UTF_8);
+    File outputDir = temp.newFolder();
+    HttpDownloader underTest = newDownloader(outputDir).setLocalFileMode(HttpDownloader.LocalFileMode.LINK);
+
+    File file = underTest.download(src.toURI().toURL().toString(), false);
+
+    assertThat(file).isEqualTo(src);
+    File output = new File(outputDir, "foo-1.0.jar");
+    assertThat(Files.isSymbolicLink(output.toPath())).isFalse();
+    assertThat(Files.isSameFile(src.toPath(), output.toPath())).isTrue();
+  }
+
+  @Test
+  public void keep_copy_of_linked_local_file() throws Exception {
+    File src = temp.newFile("foo-1.0.jar");
+    FileUtils.write(src, "local content", StandardCharsets.UTF_8);
+    File outputDir = temp.newFolder();
+    // copied by a previous execution, for example because output directory is on another file system
+    File output = new File(outputDir, "foo-1.0.jar");
+    Files.copy(src.toPath(), output.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+    HttpDownloader underTest = newDownloader(outputDir).setLocalFileMode(HttpDownloader.LocalFileMode.LINK);
+
+    underTest.download(src.toURI().toURL().toString(), false);
+
+    assertThat(Files.isSameFile(src.toPath(), output.toPath())).isFalse();
+    assertThat(output).hasContent("local content");
+  }
+
+  @Test
+  public void keep_downloaded_files_writable() throws Exception {
+    assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+    File outputDir = temp.newFolder();
+    File file = newDownloader(outputDir).download(url("foo-1.0.jar"), false);
+
+    assertThat(Files.getPosixFilePermissions(file.toPath())).contains(PosixFilePermission.OWNER_WRITE);
+    assertThat(Files.getPosixFilePermissions(new File(outputDir, "foo-1.0.jar").toPath())).contains(PosixFilePermission.OWNER_WRITE);
+  }
+
+  @Test
+  public void verify_checksum_of_linked_local_file() throws Exception {
+    File src = temp.newFile("foo-1.0.jar");
+    FileUtils.write(src, "local content", StandardCharsets.UTF_8);
+    FileUtils.write(new File(src.getPath() + ".sha1"), "e0b6e8b8b4b1b5ea8dd33e56c5dff0bd0a2af8c5  foo-1.0.jar", StandardCharsets.UTF_8);
+    HttpDownloader underTest = newDownloader(temp.newFolder()).setLocalFileMode(HttpDownloader.LocalFileMode.LINK);
+
+    try {
+      underTest.download(src.toURI().toURL().toString(), false);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getCause()).hasMessageContaining("declares e0b6e8b8b4b1b5ea8dd33e56c5dff0bd0a2af8c5");
+    }
+  }
+
+  @Test
+  public void reference_local_file_in_place() throws Exception {
+    File src = temp.newFile("foo-1.0.jar");
+    FileUtils.write(src, "local content", StandardCharsets.UTF_8);
+    File outputDir = temp.newFolder();
+    HttpDownloader underTest = newDownloader(outputDir).setLocalFileMode(HttpDownloader.LocalFileMode.SYMLINK);
+
+    File file = underTest.download(src.toURI().toURL().toString(), false);
+
+    assertThat(file).isEqualTo(src);
+    assertThat(Files.readSymbolicLink(new File(outputDir, "foo-1.0.jar").toPath())).isEqualTo(src.toPath());
+  }
+}
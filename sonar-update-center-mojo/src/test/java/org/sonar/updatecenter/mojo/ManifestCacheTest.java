@@ -0,0 +1,123 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.updatecenter.common.PluginManifest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ManifestCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private ManifestCache underTest = new ManifestCache();
+
+  @Test
+  public void read_each_file_once() throws Exception {
+    File jar = copy("csharp-plugin-1.0.jar", temp.newFile("csharp-plugin-1.0.jar"));
+    File link = new File(temp.newFolder(), "csharp-plugin-1.0.jar");
+    Files.createLink(link.toPath(), jar.toPath());
+
+    PluginManifest manifest = underTest.get(jar);
+
+    assertThat(manifest.getKey()).isEqualTo("csharp");
+    assertThat(underTest.get(jar)).isSameAs(manifest);
+    assertThat(underTest.get(link)).isSameAs(manifest);
+  }
+
+  @Test
+  public void read_modified_file_again() throws Exception {
+    File jar = copy("csharp-plugin-1.0.jar", temp.newFile("plugin.jar"));
+    PluginManifest manifest = underTest.get(jar);
+
+    Files.delete(jar.toPath());
+    copy("dotnet-plugin-1.0.jar", jar);
+
+    assertThat(underTest.get(jar)).isNotSameAs(manifest);
+    assertThat(underTest.get(jar).getKey()).isEqualTo("dotnet");
+  }
+
+  @Test
+  public void persist_manifests_between_executions() throws Exception {
+    File indexFile = new File(temp.newFolder(), "manifests.json");
+    File jar = copy("csharp-plugin-1.0.jar", temp.newFile("csharp-plugin-1.0.jar"));
+    ManifestCache first = new ManifestCache(indexFile);
+    first.get(jar);
+    first.save();
+    assertThat(indexFile).isFile();
+
+    // same size and date, so the file is not read again
+    long lastModified = jar.lastModified();
+    FileUtils.writeByteArrayToFile(jar, new byte[(int) jar.length()]);
+    jar.setLastModified(lastModified);
+    assertThat(new ManifestCache(indexFile).get(jar).getKey()).isEqualTo("csharp");
+
+    // modified file
+    Files.delete(jar.toPath());
+    copy("dotnet-plugin-1.0.jar", jar);
+    assertThat(new ManifestCache(indexFile).get(jar).getKey()).isEqualTo("dotnet");
+  }
+
+  @Test
+  public void ignore_corrupted_index() throws Exception {
+    File indexFile = temp.newFile("manifests.json");
+    FileUtils.write(indexFile, "{ not json", StandardCharsets.UTF_8);
+    File jar = copy("csharp-plugin-1.0.jar", temp.newFile("csharp-plugin-1.0.jar"));
+
+    ManifestCache underTest = new ManifestCache(indexFile);
+
+    assertThat(underTest.get(jar).getKey()).isEqualTo("csharp");
+    underTest.save();
+    assertThat(new ManifestCache(indexFile).get(jar).getKey()).isEqualTo("csharp");
+  }
+
+  @Test
+  public void ignore_invalid_index_entries() throws Exception {
+    File jar = copy("csharp-plugin-1.0.jar", temp.newFile("csharp-plugin-1.0.jar"));
+    File indexFile = temp.newFile("manifests.json");
+    String path = jar.getAbsolutePath().replace("\\", "\\\\");
+    FileUtils.write(indexFile, "{\"/unknown.jar\": null, \"" + path + "\": {\"size\": " + jar.length() + ", \"lastModified\": "
+      + jar.lastModified() + ", \"attributes\": {\"Plugin-Key\": null}}}", StandardCharsets.UTF_8);
+
+    assertThat(new ManifestCache(indexFile).get(jar).getKey()).isEqualTo("csharp");
+  }
+
+  @Test
+  public void consider_unexpected_index_as_empty() throws Exception {
+    File indexFile = temp.newFile("manifests.json");
+    FileUtils.write(indexFile, "[1, 2]", StandardCharsets.UTF_8);
+    File jar = copy("csharp-plugin-1.0.jar", temp.newFile("csharp-plugin-1.0.jar"));
+
+    assertThat(new ManifestCache(indexFile).get(jar).getKey()).isEqualTo("csharp");
+  }
+
+  private File copy(String resource, File to) throws Exception {
+    FileUtils.copyFile(FileUtils.toFile(getClass().getResource("/org/sonar/updatecenter/mojo/GenerateMojoTest/" + resource)), to);
+    return to;
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutputFilesTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private OutputFiles underTest = new OutputFiles();
+
+  @Test
+  public void do_not_write_unchanged_files() throws Exception {
+    File dir = temp.newFolder();
+    File unchanged = new File(dir, "unchanged.html");
+    FileUtils.write(unchanged, "same", StandardCharsets.UTF_8);
+    unchanged.setLastModified(1_000_000L);
+    File changed = new File(dir, "changed.html");
+    FileUtils.write(changed, "before", StandardCharsets.UTF_8);
+    File created = new File(dir, "sub/created.json");
+
+    assertThat(underTest.write(unchanged, bytes("same"))).isFalse();
+    assertThat(underTest.write(changed, bytes("after"))).isTrue();
+    assertThat(underTest.write(created, bytes("{}"))).isTrue();
+
+    assertThat(unchanged.lastModified()).isEqualTo(1_000_000L);
+    assertThat(FileUtils.readFileToString(changed, StandardCharsets.UTF_8)).isEqualTo("after");
+    assertThat(FileUtils.readFileToString(created, StandardCharsets.UTF_8)).isEqualTo("{}");
+    assertThat(underTest.getChangedFiles()).containsExactly(changed.getAbsoluteFile(), created.getAbsoluteFile());
+    assertThat(dir.list()).containsOnly("unchanged.html", "changed.html", "sub");
+  }
+
+  @Test
+  public void list_changed_files_of_directory() throws Exception {
+    File dir = temp.newFolder();
+    underTest.write(new File(dir, "b.html"), bytes("b"));
+    underTest.write(new File(dir, "sub/a.html"), bytes("a"));
+    underTest.write(new File(temp.newFolder(), "other.html"), bytes("other"));
+
+    underTest.writeChangedFiles(dir);
+
+    assertThat(FileUtils.readLines(new File(dir, OutputFiles.CHANGED_FILES), StandardCharsets.UTF_8)).containsExactly("b.html", "sub/a.html");
+  }
+
+  @Test
+  public void do_not_write_unchanged_list_of_changed_files() throws Exception {
+    File dir = temp.newFolder();
+    File list = new File(dir, OutputFiles.CHANGED_FILES);
+    underTest.writeChangedFiles(dir);
+    list.setLastModified(1_000_000L);
+
+    new OutputFiles().writeChangedFiles(dir);
+
+    assertThat(list).hasContent("");
+    assertThat(list.lastModified()).isEqualTo(1_000_000L);
+  }
+
+  @Test
+  public void write_compressed_copies() throws Exception {
+    File dir = temp.newFolder();
+    File file = new File(dir, "editions.json");
+    File gzFile = new File(dir, "editions.json.gz");
+    underTest = new OutputFiles(OutputCompressor.loadAll());
+
+    assertThat(underTest.write(file, bytes("{}"))).isTrue();
+    assertThat(gunzip(gzFile)).isEqualTo("{}");
+    assertThat(underTest.getChangedFiles()).containsExactly(file.getAbsoluteFile(), gzFile.getAbsoluteFile());
+
+    // missing copy of unchanged file
+    gzFile.delete();
+    underTest = new OutputFiles(OutputCompressor.loadAll());
+    assertThat(underTest.write(file, bytes("{}"))).isFalse();
+    assertThat(gunzip(gzFile)).isEqualTo("{}");
+    assertThat(underTest.getChangedFiles()).containsExactly(gzFile.getAbsoluteFile());
+
+    // same content is compressed to the same bytes
+    underTest = new OutputFiles(OutputCompressor.loadAll());
+    underTest.writeCompressedFiles(file);
+    assertThat(underTest.getChangedFiles()).isEmpty();
+  }
+
+  @Test
+  public void write_compressed_copy_of_file_written_by_other_means() throws Exception {
+    File file = temp.newFile("sonar-updates.properties");
+    FileUtils.write(file, "plugins=foo", StandardCharsets.UTF_8);
+
+    new OutputFiles(OutputCompressor.loadAll()).writeCompressedFiles(file);
+
+    assertThat(gunzip(new File(file.getParentFile(), "sonar-updates.properties.gz"))).isEqualTo("plugins=foo");
+  }
+
+  private static String gunzip(File file) throws Exception {
+    try (InputStream input = new GZIPInputStream(new FileInputStream(file))) {
+      return IOUtils.toString(input, StandardCharsets.UTF_8);
+    }
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void list_names_of_file_and_of_its_compressed_copies() {
+    assertThat(underTest.fileNames("foo.json")).containsExactly("foo.json");
+    assertThat(new OutputFiles(OutputCompressor.loadAll()).fileNames("foo.json")).containsExactly("foo.json", "foo.json.gz");
+  }
+}
@@ -34,6 +34,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
 import org.sonar.updatecenter.common.Plugin;
 import org.sonar.updatecenter.common.PluginReferential;
 import org.sonar.updatecenter.common.Release;
@@ -43,6 +44,8 @@ import org.sonar.updatecenter.common.Version;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 
 public class PluginHeadersTest {
@@ -133,6 +136,48 @@ public class PluginHeadersTest {
     assertThat(flattenFile).isEqualTo(flattenExpectedFile);
   }
 
+  @Test
+  public void shouldGenerateHtmlOfPluginsConcurrently() throws Exception {
+    Plugin[] plugins = new Plugin[5];
+    for (int i = 0; i < plugins.length; i++) {
+      Plugin plugin = Plugin.factory("plugin" + i);
+      Release release = new Release(plugin, Version.create("1.0"));
+      release.setDate(getDate());
+      release.addRequiredSonarVersions("3.0", "4.0");
+      plugin.addRelease(release);
+      plugin.setName("Plugin " + (plugins.length - i));
+      plugins[i] = plugin;
+    }
+    prepareMocks(plugins);
+    Log log = mock(Log.class);
+
+    new PluginHeaders(center, outputFolder, log, new OutputFiles(), 3).generateHtml();
+
+    assertThat(outputFolder.list()).hasSize(3 + 1 + 2 * plugins.length);
+    InOrder inOrder = inOrder(log);
+    for (int i = 0; i < plugins.length; i++) {
+      assertThat(new File(outputFolder, "plugin" + i + "-confluence-include.html")).isFile();
+      inOrder.verify(log).info(contains("confluence html include of plugin plugin" + i + " "));
+    }
+    String matrix = FileUtils.readFileToString(new File(outputFolder, "compatibility-matrix.html"), StandardCharsets.UTF_8);
+    assertThat(matrix.indexOf("Plugin 1")).isLessThan(matrix.indexOf("Plugin 5"));
+  }
+
+  @Test
+  public void shouldGenerateCompatibilityMatrixWithLastCompatibleReleases() throws Exception {
+    Plugin plugin = Plugin.factory(PLUGIN_KEY);
+    plugin.addRelease(new Release(plugin, "1.0").setDate(getDate()).addRequiredSonarVersions("3.0", "3.7.4"));
+    plugin.addRelease(new Release(plugin, "1.1").setDate(getDate()).addRequiredSonarVersions("3.7.4"));
+    plugin.setName("name");
+    prepareMocks(plugin);
+
+    pluginHeaders.generateHtml();
+
+    String matrix = FileUtils.readFileToString(new File(outputFolder, "compatibility-matrix.html"), StandardCharsets.UTF_8).replaceAll("\\s", "");
+    // 3.0, 3.7 and 4.0 are the major versions
+    assertThat(matrix).contains("<td>1.0</td><td>1.1</td><td><imgclass=\"emoticon\"alt=\"(notcompatible)\"");
+  }
+
   // UPC-95
   @Test
   public void shouldGenerateHtmlForCommercialPlugins() throws Exception {
@@ -0,0 +1,134 @@
+/*
+ * SonarSource :: Update Center :: Maven Plugin
+ * Copyright (C) 2010-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.updatecenter.mojo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.sonar.updatecenter.common.Plugin;
+import org.sonar.updatecenter.common.PluginManifest;
+import org.sonar.updatecenter.common.Release;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ReleasePipelineTest {
+
+  private ReleasePipeline underTest = new ReleasePipeline(3, 2, 1);
+
+  @Test
+  public void merge_plugins_in_order_whatever_the_order_of_downloads() {
+    Plugin foo = plugin("foo", "1.0", "1.1");
+    Plugin bar = plugin("bar", "2.0");
+    Plugin noUrl = Plugin.factory("nourl");
+    noUrl.addRelease(new Release(noUrl, "1.0"));
+    CountDownLatch barDownloaded = new CountDownLatch(1);
+    List<String> merged = new ArrayList<>();
+
+    underTest.run(asList(foo, bar, noUrl),
+      release -> {
+        if (release.getKey().equals("bar")) {
+          barDownloaded.countDown();
+        } else if (!barDownloaded.await(10, TimeUnit.SECONDS)) {
+          throw new IllegalStateException("bar is not downloaded");
+        }
+        return release.getDownloadUrl() == null ? null : new File(release.getKey() + "-" + release.getVersion() + ".jar");
+      },
+      file -> {
+        PluginManifest manifest = new PluginManifest();
+        manifest.setKey(file.getName());
+        return manifest;
+      },
+      (plugin, releaseFiles) -> releaseFiles.forEach(releaseFile -> merged.add(releaseFile.getRelease().getKey() + ":"
+        + (releaseFile.getManifest() == null ? null : releaseFile.getManifest().getKey()))));
+
+    assertThat(merged).containsExactly("foo:foo-1.0.jar", "foo:foo-1.1.jar", "bar:bar-2.0.jar", "nourl:null");
+  }
+
+  @Test
+  public void download_releases_after_their_dependencies() {
+    Plugin foo = plugin("foo", "1.0");
+    Plugin bar = plugin("bar", "2.0");
+    foo.getRelease("1.0").addOutgoingDependency(bar.getRelease("2.0"));
+    List<String> downloaded = Collections.synchronizedList(new ArrayList<>());
+
+    underTest.run(asList(foo, bar),
+      release -> {
+        downloaded.add(release.getKey());
+        return new File(release.getKey() + ".jar");
+      },
+      file -> new PluginManifest(),
+      (plugin, releaseFiles) -> {
+      });
+
+    assertThat(downloaded).containsExactly("bar", "foo");
+  }
+
+  @Test
+  public void fail_if_releases_require_each_other() {
+    Plugin foo = plugin("foo", "1.0");
+    Plugin bar = plugin("bar", "2.0");
+    foo.getRelease("1.0").addOutgoingDependency(bar.getRelease("2.0"));
+    bar.getRelease("2.0").addOutgoingDependency(foo.getRelease("1.0"));
+
+    try {
+      underTest.run(asList(foo, bar), release -> new File(release.getKey() + ".jar"), file -> new PluginManifest(), (plugin, releaseFiles) -> {
+      });
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Fail to download releases");
+      assertThat(e.getCause()).hasMessageStartingWith("Fail to process releases with cyclic dependencies");
+    }
+  }
+
+  @Test
+  public void stop_merging_plugins_when_a_release_fails() {
+    Plugin foo = plugin("foo", "1.0");
+    Plugin bar = plugin("bar", "2.0");
+    List<String> merged = new ArrayList<>();
+
+    try {
+      underTest.run(asList(foo, bar),
+        release -> new File(release.getKey() + ".jar"),
+        file -> {
+          throw new IllegalArgumentException("corrupted " + file.getName());
+        },
+        (plugin, releaseFiles) -> merged.add(plugin.getKey()));
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageStartingWith("Fail to process release ");
+      assertThat(e.getCause()).hasMessageStartingWith("corrupted ");
+    }
+    assertThat(merged).isEmpty();
+  }
+
+  private static Plugin plugin(String key, String... versions) {
+    Plugin plugin = Plugin.factory(key);
+    for (String version : versions) {
+      plugin.addRelease(new Release(plugin, version).setDownloadUrl("http://example.com/" + key + "-" + version + ".jar"));
+    }
+    return plugin;
+  }
+}
@@ -20,8 +20,11 @@
 package org.sonar.updatecenter.mojo.editions;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.NoSuchElementException;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -40,6 +43,7 @@ import org.sonar.updatecenter.mojo.editions.generators.EditionGenerator;
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -101,6 +105,64 @@ public class EditionsGeneratorTest {
     assertThatEditionMatchesTemplate(edition70, template);
   }
 
+  @Test
+  public void editions_with_same_jars_share_zip() throws Exception {
+    Sonar sonarqube = new Sonar().setReleases(new String[] {"6.7", "7.0", "7.1"}).setLtsRelease("6.7");
+    UpdateCenter updateCenter = UpdateCenter.create(pluginReferential, sonarqube);
+    when(templateLoader.load()).thenReturn(asList(newEnterpriseTemplate().setPluginKeys(asList("cobol")).build()));
+
+    EditionsGenerator underTest = new EditionsGenerator(updateCenter, templateLoader, "1234").setDeduplicateZips(true);
+    underTest.generateZipsJsonHtml(outputDir, generator);
+
+    verify(generator).generate(eq(outputDir), editionListCapture.capture());
+    // cobol 1.1 is compatible with 6.7 and 7.0, but not with 7.1
+    assertThat(editionListCapture.getValue()).extracting(Edition::getSonarQubeVersion).containsExactly("6.7", "7.0");
+    assertThat(editionListCapture.getValue()).extracting(Edition::getZipFileName).containsExactly("enterprise-edition-6.7.0.1234.zip", "enterprise-edition-6.7.0.1234.zip");
+  }
+
+  @Test
+  public void delete_stale_files_in_incremental_mode() throws Exception {
+    Sonar sonarqube = new Sonar().setReleases(new String[] {"6.7"});
+    UpdateCenter updateCenter = UpdateCenter.create(pluginReferential, sonarqube);
+    when(templateLoader.load()).thenReturn(asList(newEnterpriseTemplate().setPluginKeys(asList("cobol")).build()));
+    when(generator.outputFileNames(anyList())).thenReturn(Collections.singleton("kept.zip"));
+    File kept = new File(outputDir, "kept.zip");
+    FileUtils.write(kept, "kept", StandardCharsets.UTF_8);
+    File stale = new File(outputDir, "stale.zip");
+    FileUtils.write(stale, "stale", StandardCharsets.UTF_8);
+    stale.setLastModified(1_000_000L);
+    File backup = new File(outputDir, "kept.zip.bak");
+    FileUtils.write(backup, "backup", StandardCharsets.UTF_8);
+    backup.setLastModified(1_000_000L);
+
+    new EditionsGenerator(updateCenter, templateLoader, "1234")
+      .setIncremental(true)
+      .generateZipsJsonHtml(outputDir, generator);
+
+    assertThat(kept).exists();
+    assertThat(stale).doesNotExist();
+    assertThat(backup).doesNotExist();
+  }
+
+  @Test
+  public void keep_directories_and_written_files_in_incremental_mode() throws Exception {
+    Sonar sonarqube = new Sonar().setReleases(new String[] {"6.7"});
+    UpdateCenter updateCenter = UpdateCenter.create(pluginReferential, sonarqube);
+    when(templateLoader.load()).thenReturn(asList(newEnterpriseTemplate().setPluginKeys(asList("cobol")).build()));
+    File subDir = new File(outputDir, "sub");
+    FileUtils.forceMkdir(subDir);
+    subDir.setLastModified(1_000_000L);
+    // does not declare its files
+    EditionGenerator writer = (dir, editions) -> FileUtils.write(new File(dir, "written.html"), "written", StandardCharsets.UTF_8);
+
+    new EditionsGenerator(updateCenter, templateLoader, "1234")
+      .setIncremental(true)
+      .generateZipsJsonHtml(outputDir, writer);
+
+    assertThat(subDir).isDirectory();
+    assertThat(new File(outputDir, "written.html")).exists();
+  }
+
   @Test
   public void fail_if_template_declares_a_plugin_that_does_not_exist() throws Exception {
     Sonar sonarqube = new Sonar().setReleases(new String[] {"5.6", "6.7", "7.0"});
@@ -118,6 +180,20 @@ public class EditionsGeneratorTest {
     underTest.generateZipsJsonHtml(outputDir, generator);
   }
 
+  @Test
+  public void fail_with_all_the_plugins_that_do_not_exist() throws Exception {
+    Sonar sonarqube = new Sonar().setReleases(new String[] {"6.7", "7.0"});
+    UpdateCenter updateCenter = UpdateCenter.create(pluginReferential, sonarqube);
+    when(templateLoader.load()).thenReturn(asList(
+      newEnterpriseTemplate().setPluginKeys(asList("cobol", "wat")).build(),
+      newEnterpriseTemplate().setKey("datacenter").setPluginKeys(asList("wat", "foo")).build()));
+
+    expectedException.expect(NoSuchElementException.class);
+    expectedException.expectMessage("Unable to find plugin with key wat, foo");
+
+    new EditionsGenerator(updateCenter, templateLoader, "1234").generateZipsJsonHtml(outputDir, generator);
+  }
+
   @Test
   public void edition_is_not_generated_if_a_plugin_has_no_compatible_release() throws Exception {
     Sonar sonarqube = new Sonar().setReleases(new String[] {"99.2"});
@@ -25,16 +25,21 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.assertj.core.util.Sets;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
+import org.sonar.updatecenter.mojo.OutputFiles;
 import org.sonar.updatecenter.mojo.editions.Edition;
 
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -67,6 +72,74 @@ public class ZipsEditionGeneratorTest {
     assertThatZipContainsExactly(expectedZip, "file1.jar", "file2.jar");
   }
 
+  @Test
+  public void store_jars_without_compression_by_default() throws Exception {
+    List<Edition> editions = Collections.singletonList(createEdition("dev", "file1.jar"));
+
+    generator.generate(outputDir, editions);
+
+    assertThatZipEntryMethodIs(new File(outputDir, "dev.zip"), ZipEntry.STORED);
+  }
+
+  @Test
+  public void deflate_jars() throws Exception {
+    List<Edition> editions = Collections.singletonList(createEdition("dev", "file1.jar"));
+
+    generator.setCompression(ZipsEditionGenerator.Compression.DEFLATED).generate(outputDir, editions);
+
+    assertThatZipEntryMethodIs(new File(outputDir, "dev.zip"), ZipEntry.DEFLATED);
+    assertThatZipContainsExactly(new File(outputDir, "dev.zip"), "file1.jar");
+  }
+
+  @Test
+  public void generate_zip_again_only_if_jars_change() throws Exception {
+    List<Edition> editions = Collections.singletonList(createEdition("dev", "file1.jar", "file2.jar"));
+    OutputFiles output = new OutputFiles();
+    File zip = new File(outputDir, "dev.zip");
+    generator = new ZipsEditionGenerator(jarDir, output);
+
+    generator.generate(outputDir, editions);
+    assertThat(output.getChangedFiles()).containsExactly(zip.getAbsoluteFile());
+    zip.setLastModified(1_000_000L);
+
+    output = new OutputFiles();
+    new ZipsEditionGenerator(jarDir, output).generate(outputDir, editions);
+    assertThat(zip.lastModified()).isEqualTo(1_000_000L);
+    assertThat(output.getChangedFiles()).isEmpty();
+
+    FileUtils.write(new File(jarDir, "file2.jar"), "new content", StandardCharsets.UTF_8);
+    new ZipsEditionGenerator(jarDir, output).generate(outputDir, editions);
+    assertThat(zip.lastModified()).isNotEqualTo(1_000_000L);
+    assertThat(output.getChangedFiles()).containsExactly(zip.getAbsoluteFile());
+    assertThatZipContainsExactly(zip, "file1.jar", "file2.jar");
+  }
+
+  @Test
+  public void generate_corrupted_zip_again() throws Exception {
+    List<Edition> editions = Collections.singletonList(createEdition("dev", "file1.jar"));
+    File zip = new File(outputDir, "dev.zip");
+    FileUtils.write(zip, "interrupted", StandardCharsets.UTF_8);
+
+    generator.generate(outputDir, editions);
+
+    assertThatZipContainsExactly(zip, "file1.jar");
+  }
+
+  @Test
+  public void generate_zip_files_concurrently() throws Exception {
+    List<Edition> editions = asList(
+      createEdition("dev", "file1.jar", "file2.jar"),
+      createEdition("enterprise", "file1.jar", "file3.jar"),
+      createEdition("datacenter", "file2.jar", "file3.jar"));
+
+    generator.setParallelism(3).generate(outputDir, editions);
+
+    assertThat(outputDir.list()).containsOnly("dev.zip", "enterprise.zip", "datacenter.zip");
+    assertThatZipContainsExactly(new File(outputDir, "dev.zip"), "file1.jar", "file2.jar");
+    assertThatZipContainsExactly(new File(outputDir, "enterprise.zip"), "file1.jar", "file3.jar");
+    assertThatZipContainsExactly(new File(outputDir, "datacenter.zip"), "file2.jar", "file3.jar");
+  }
+
   @Test
   public void dont_generate_zip_files_of_empty_editions() throws Exception {
     List<Edition> editions = Collections.singletonList(createEdition("dev"));
@@ -128,6 +201,14 @@ public class ZipsEditionGeneratorTest {
     return jarFile;
   }
 
+  private static void assertThatZipEntryMethodIs(File zip, int method) throws Exception {
+    try (ZipFile zipFile = new ZipFile(zip)) {
+      ZipEntry entry = zipFile.entries().nextElement();
+      assertThat(entry.getMethod()).isEqualTo(method);
+      assertThat(IOUtils.toString(zipFile.getInputStream(entry), StandardCharsets.UTF_8)).isEqualTo("content of file");
+    }
+  }
+
   private void assertThatZipContainsExactly(File zip, String... filenames) throws Exception {
     try (ZipInputStream zipInput = new ZipInputStream(new FileInputStream(zip))) {
       for (String filename : filenames) {